@@ -1,6 +1,9 @@
 
 package com.kenai.redminenb;
 
+import com.kenai.redminenb.repository.IssueStore;
+import com.kenai.redminenb.repository.IssueTextIndex;
+import com.kenai.redminenb.repository.RedmineRepository;
 import javax.swing.UIManager;
 import org.openide.modules.ModuleInstall;
 
@@ -22,4 +25,10 @@ public class Installer extends ModuleInstall {
         }
     }
 
+    @Override
+    public void close() {
+        IssueStore.flushAll();
+        IssueTextIndex.flushAll();
+        RedmineRepository.storeMetadataSnapshots();
+    }
 }
@@ -4,6 +4,7 @@ import com.kenai.redminenb.query.ParameterValue;
 import com.kenai.redminenb.query.RedmineQuery;
 import com.kenai.redminenb.query.serialization.RedmineQueryXml;
 import com.kenai.redminenb.repository.RedmineRepository;
+import com.kenai.redminenb.repository.RequestLane;
 import com.kenai.redminenb.ui.Defaults;
 import com.taskadapter.redmineapi.RedmineException;
 import com.taskadapter.redmineapi.bean.Project;
@@ -53,6 +54,10 @@ public class RedmineConfig {
     private static final String QUERY_REFRESH_INT = "redmine.query_refresh";         // NOI18N
     private static final String QUERY_AUTO_REFRESH = "redmine.query_auto_refresh_";  // NOI18N
     private static final String ISSUE_REFRESH_INT = "redmine.issue_refresh";         // NOI18N
+    private static final String REQUEST_LANE_THROUGHPUT = "redmine.request_lane_throughput_"; // NOI18N
+    private static final String METADATA_TTL = "redmine.metadata_ttl_";             // NOI18N
+    private static final String HTML_CACHE_SPILL = "redmine.html_cache_spill";       // NOI18N
+    private static final String QUERY_LIVE_FILTER = "redmine.query_live_filter";     // NOI18N
     private static final String DELIMITER = "<=>";                                   // NOI18N
     private static final String CHECK_UPDATES = "redmine.check_updates";             // NOI18N
     private static final String LAST_CHANGE_FROM = "redmine.last_change_from";       // NOI18N
@@ -108,6 +113,56 @@ public class RedmineConfig {
         return getPreferences().getInt(ISSUE_REFRESH_INT, DEFAULT_ISSUE_REFRESH);
     }
 
+    public void setRequestLaneThroughput(RequestLane lane, int throughput) {
+        getPreferences().putInt(REQUEST_LANE_THROUGHPUT + lane.name().toLowerCase(), throughput);
+    }
+
+    /**
+     * @return number of tasks of the lane executed in parallel per repository,
+     * takes effect for repositories opened after a change
+     */
+    public int getRequestLaneThroughput(RequestLane lane) {
+        int throughput = getPreferences().getInt(REQUEST_LANE_THROUGHPUT + lane.name().toLowerCase(),
+                lane.getDefaultThroughput());
+        return Math.max(1, throughput);
+    }
+
+    public void setMetadataTtl(String cacheName, int minutes) {
+        getPreferences().putInt(METADATA_TTL + cacheName, minutes);
+    }
+
+    /**
+     * @return time in minutes after which cached server metadata (trackers,
+     * versions, ...) is reloaded in the background, zero or less means never
+     */
+    public int getMetadataTtl(String cacheName, int defaultMinutes) {
+        return getPreferences().getInt(METADATA_TTL + cacheName, defaultMinutes);
+    }
+
+    public void setHtmlCacheSpill(boolean spill) {
+        getPreferences().putBoolean(HTML_CACHE_SPILL, spill);
+    }
+
+    /**
+     * @return true if rendered journal HTML evicted from memory is kept on
+     * disk, takes effect for repositories opened after a change
+     */
+    public boolean getHtmlCacheSpill() {
+        return getPreferences().getBoolean(HTML_CACHE_SPILL, true);
+    }
+
+    public void setQueryLiveFilter(boolean liveFilter) {
+        getPreferences().putBoolean(QUERY_LIVE_FILTER, liveFilter);
+    }
+
+    /**
+     * @return true if edits of the query filters are applied without an
+     * explicit search
+     */
+    public boolean getQueryLiveFilter() {
+        return getPreferences().getBoolean(QUERY_LIVE_FILTER, true);
+    }
+
     public void setQueryAutoRefresh(String queryName, boolean refresh) {
         getPreferences().putBoolean(QUERY_AUTO_REFRESH + queryName, refresh);
     }
@@ -374,6 +429,27 @@ public class RedmineConfig {
         return Collections.emptyMap();
     }
 
+    /**
+     * Returns the directory holding the locally persisted data of a
+     * repository (issue store, metadata snapshots).
+     *
+     * @param repositoryId id of the repository
+     * @return the directory (not necessarily existing)
+     */
+    public File getRepositoryDataDir(String repositoryId) {
+        StringBuilder dirName = new StringBuilder();
+        for (char c : repositoryId.toCharArray()) {
+            if (Character.isLetterOrDigit(c) || c == '-' || c == '_') {
+                dirName.append(c);
+            } else {
+                dirName.append('_');
+            }
+        }
+        // The sanitized name is not unique - the hash disambiguates
+        dirName.append('-').append(Integer.toHexString(repositoryId.hashCode()));
+        return new File(new File(getConfigPath(), "repositories"), dirName.toString()); // NOI18N
+    }
+
     /**
      * Returns the path for the Redmine configuration directory.
      *
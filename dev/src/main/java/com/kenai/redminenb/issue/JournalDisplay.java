@@ -17,6 +17,7 @@
 package com.kenai.redminenb.issue;
 
 import com.kenai.redminenb.repository.RedmineRepository;
+import com.kenai.redminenb.repository.RenderedHtmlCache;
 import com.kenai.redminenb.user.RedmineUser;
 import com.kenai.redminenb.util.NestedProject;
 import static com.kenai.redminenb.util.markup.StringUtil.escapeHTML;
@@ -29,9 +30,12 @@ import com.taskadapter.redmineapi.bean.Journal;
 import com.taskadapter.redmineapi.bean.JournalDetail;
 import com.taskadapter.redmineapi.bean.Tracker;
 import com.taskadapter.redmineapi.bean.Version;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
 import java.io.StringWriter;
 import java.util.Date;
 import java.util.MissingResourceException;
+import java.util.Objects;
 import java.util.ResourceBundle;
 import org.apache.commons.lang.StringUtils;
 import org.openide.util.NbBundle;
@@ -41,6 +45,25 @@ import org.openide.util.NbBundle;
  * @author matthias
  */
 public class JournalDisplay extends javax.swing.JPanel {
+    /**
+     * Version of the HTML created by buildJournalData - needs to be
+     * increased, when the output changes, to invalidate cached HTML.
+     */
+    private static final int RENDERER_VERSION = 1;
+
+    /**
+     * Records whether all ids referenced by a journal entry could be
+     * resolved - HTML with unresolved ids must not be cached.
+     */
+    private static final class Lookups {
+        private boolean complete = true;
+
+        String unresolved(String value) {
+            complete = false;
+            return "(ID: " + value + ")";
+        }
+    }
+
     public static class JournalData {
         private Integer id;
         private Integer pos;
@@ -78,9 +101,32 @@ public class JournalDisplay extends javax.swing.JPanel {
         
     }
     
-    public JournalDisplay(JournalData jd) {
+    private JournalData journalData;
+
+    public JournalDisplay() {
         initComponents();
-        
+        // The preview sets its preferred height after the text is laid out,
+        // the change has to reach the layout of the journal list
+        content.addPropertyChangeListener("preferredSize", new PropertyChangeListener() { // NOI18N
+            @Override
+            public void propertyChange(PropertyChangeEvent evt) {
+                revalidate();
+            }
+        });
+    }
+
+    public JournalDisplay(JournalData jd) {
+        this();
+        setJournalData(jd);
+    }
+
+    /**
+     * Show the supplied entry - allows to reuse the display for different
+     * entries.
+     */
+    public final void setJournalData(JournalData jd) {
+        journalData = jd;
+
         leftLabel.setText(NbBundle.getMessage(JournalDisplay.class, 
                 "journalDisplay.leftTemplate", new Object[]{jd.getUsername(), jd.getCreate()}));
         leftLabel.setToolTipText(NbBundle.getMessage(JournalDisplay.class, 
@@ -93,9 +139,46 @@ public class JournalDisplay extends javax.swing.JPanel {
         content.setHTMLText(jd.getHtmlContent());
     }
 
+    public JournalData getJournalData() {
+        return journalData;
+    }
+
     public static JournalData buildJournalData(RedmineIssue ri, Journal jd, int index) {
         RedmineRepository repo = ri.getRepository();
-        
+        // The notes of journals can be edited, so the rendered HTML is
+        // only reused for unchanged content
+        RenderedHtmlCache htmlCache = repo.getJournalHtmlCache();
+        int contentHash = contentHash(jd);
+        String html = htmlCache.get(jd.getId(), RENDERER_VERSION, contentHash);
+        if (html == null) {
+            Lookups lookups = new Lookups();
+            html = renderJournal(repo, ri, jd, lookups);
+            if (lookups.complete) {
+                htmlCache.put(jd.getId(), RENDERER_VERSION, contentHash, html);
+            }
+        }
+
+        return new JournalData(
+                jd.getId(),
+                index + 1,
+                jd.getUser().getFullName(),
+                jd.getCreatedOn(),
+                html
+        );
+    }
+
+    private static int contentHash(Journal jd) {
+        int hash = Objects.hashCode(jd.getNotes());
+        if (jd.getDetails() != null) {
+            for (JournalDetail detail : jd.getDetails()) {
+                hash = 31 * hash + Objects.hash(detail.getProperty(), detail.getName(),
+                        detail.getOldValue(), detail.getNewValue());
+            }
+        }
+        return hash;
+    }
+
+    private static String renderJournal(RedmineRepository repo, RedmineIssue ri, Journal jd, Lookups lookups) {
         String noteText = jd.getNotes();
         StringWriter writer = new StringWriter();
 
@@ -116,32 +199,32 @@ public class JournalDisplay extends javax.swing.JPanel {
 
                 switch(fieldName) {
                     case "category_id":
-                        oldValue = formatCategory(repo, ri, oldValue);
-                        newValue = formatCategory(repo, ri, newValue);
+                        oldValue = formatCategory(repo, ri, oldValue, lookups);
+                        newValue = formatCategory(repo, ri, newValue, lookups);
                         break;
                     case "fixed_version_id":
-                        oldValue = formatVersion(repo, ri, oldValue);
-                        newValue = formatVersion(repo, ri, newValue);
+                        oldValue = formatVersion(repo, ri, oldValue, lookups);
+                        newValue = formatVersion(repo, ri, newValue, lookups);
                         break;
                     case "priority_id":
-                        oldValue = formatPriority(repo, oldValue);
-                        newValue = formatPriority(repo, newValue);
+                        oldValue = formatPriority(repo, oldValue, lookups);
+                        newValue = formatPriority(repo, newValue, lookups);
                         break;
                     case "status_id":
-                        oldValue = formatStatus(repo, oldValue);
-                        newValue = formatStatus(repo, newValue);
+                        oldValue = formatStatus(repo, oldValue, lookups);
+                        newValue = formatStatus(repo, newValue, lookups);
                         break;
                     case "tracker_id":
-                        oldValue = formatTracker(repo, oldValue);
-                        newValue = formatTracker(repo, newValue);
+                        oldValue = formatTracker(repo, oldValue, lookups);
+                        newValue = formatTracker(repo, newValue, lookups);
                         break;
                     case "assigned_to_id":
-                        oldValue = formatUser(repo, ri, oldValue);
-                        newValue = formatUser(repo, ri, newValue);
+                        oldValue = formatUser(repo, ri, oldValue, lookups);
+                        newValue = formatUser(repo, ri, newValue, lookups);
                         break;
                     case "project_id":
-                        oldValue = formatProject(repo, ri, oldValue);
-                        newValue = formatProject(repo, ri, newValue);
+                        oldValue = formatProject(repo, ri, oldValue, lookups);
+                        newValue = formatProject(repo, ri, newValue, lookups);
                         break;
                 }
                 
@@ -154,12 +237,12 @@ public class JournalDisplay extends javax.swing.JPanel {
                             translatedFieldName = cfd.getName();
                             switch (cfd.getFieldFormat()) {
                                 case "user":
-                                    oldValue = formatUser(repo, ri, oldValue);
-                                    newValue = formatUser(repo, ri, newValue);
+                                    oldValue = formatUser(repo, ri, oldValue, lookups);
+                                    newValue = formatUser(repo, ri, newValue, lookups);
                                     break;
                                 case "version":
-                                    oldValue = formatVersion(repo, ri, oldValue);
-                                    newValue = formatVersion(repo, ri, newValue);
+                                    oldValue = formatVersion(repo, ri, oldValue, lookups);
+                                    newValue = formatVersion(repo, ri, newValue, lookups);
                                     break;
                                 case "bool":
                                     oldValue = formatBool(repo, ri, oldValue);
@@ -168,6 +251,7 @@ public class JournalDisplay extends javax.swing.JPanel {
                             }
                         } else {
                             translatedFieldName = "Custom field ID " + fieldId;
+                            lookups.complete = false;
                         }
                     } catch (NumberFormatException ex) {
                     }
@@ -219,106 +303,94 @@ public class JournalDisplay extends javax.swing.JPanel {
             writer.append("</div>");
         }
 
-        return new JournalData(
-                jd.getId(),
-                index + 1,
-                jd.getUser().getFullName(),
-                jd.getCreatedOn(),
-                writer.toString()
-        );
+        return writer.toString();
     }
     
-    private static String formatCategory(RedmineRepository repo, RedmineIssue issue, String value) {
+    private static String formatCategory(RedmineRepository repo, RedmineIssue issue, String value, Lookups lookups) {
         if(value == null) {
             return null;
         }
         try {
             Integer id = Integer.valueOf(value);
-            for (IssueCategory ic : repo.getIssueCategories(issue.getIssue().getProject())) {
-                if (ic.getId().equals(id)) {
-                    return ic.getName() + " (ID: " + id.toString() + ")";
-                }
+            IssueCategory ic = repo.getIssueCategory(issue.getIssue().getProject(), id);
+            if (ic != null) {
+                return ic.getName() + " (ID: " + id.toString() + ")";
             }
         } catch (NumberFormatException ex) {}
-        return "(ID: " + value + ")";
+        return lookups.unresolved(value);
     }
     
-    private static String formatVersion(RedmineRepository repo, RedmineIssue issue, String value) {
+    private static String formatVersion(RedmineRepository repo, RedmineIssue issue, String value, Lookups lookups) {
         if(value == null) {
             return null;
         }
         try {
             Integer id = Integer.valueOf(value);
-            for (Version v : repo.getVersions(issue.getIssue().getProject())) {
-                if (v.getId().equals(id)) {
-                    return v.getName() + " (ID: " + id.toString() + ")";
-                }
+            Version v = repo.getVersion(issue.getIssue().getProject(), id);
+            if (v != null) {
+                return v.getName() + " (ID: " + id.toString() + ")";
             }
         } catch (NumberFormatException ex) {}
-        return "(ID: " + value + ")";
+        return lookups.unresolved(value);
     }
     
-    private static String formatPriority(RedmineRepository repo, String value) {
+    private static String formatPriority(RedmineRepository repo, String value, Lookups lookups) {
         if(value == null) {
             return null;
         }
         try {
             Integer id = Integer.valueOf(value);
-            for (IssuePriority ip : repo.getIssuePriorities()) {
-                if (ip.getId().equals(id)) {
-                    return ip.getName() + " (ID: " + id.toString() + ")";
-                }
+            IssuePriority ip = repo.getIssuePriority(id);
+            if (ip != null) {
+                return ip.getName() + " (ID: " + id.toString() + ")";
             }
         } catch (NumberFormatException ex) {}
-        return "(ID: " + value + ")";
+        return lookups.unresolved(value);
     }
     
-    private static String formatStatus(RedmineRepository repo, String value) {
+    private static String formatStatus(RedmineRepository repo, String value, Lookups lookups) {
         if(value == null) {
             return null;
         }
         try {
             Integer id = Integer.valueOf(value);
-            for (IssueStatus is : repo.getStatuses()) {
-                if (is.getId().equals(id)) {
-                    return is.getName() + " (ID: " + id.toString() + ")";
-                }
+            IssueStatus is = repo.getStatus(id);
+            if (is != null) {
+                return is.getName() + " (ID: " + id.toString() + ")";
             }
         } catch (NumberFormatException ex) {}
-        return "(ID: " + value + ")";
+        return lookups.unresolved(value);
     }
     
-    private static String formatTracker(RedmineRepository repo, String value) {
+    private static String formatTracker(RedmineRepository repo, String value, Lookups lookups) {
         if(value == null) {
             return null;
         }
         try {
             Integer id = Integer.valueOf(value);
-            for (Tracker t : repo.getTrackers()) {
-                if (t.getId().equals(id)) {
-                    return t.getName() + " (ID: " + id.toString() + ")";
-                }
+            Tracker t = repo.getTracker(id);
+            if (t != null) {
+                return t.getName() + " (ID: " + id.toString() + ")";
             }
         } catch (NumberFormatException ex) {}
-        return "(ID: " + value + ")";
+        return lookups.unresolved(value);
     }
     
-    private static String formatUser(RedmineRepository repo, RedmineIssue issue, String value) {
+    private static String formatUser(RedmineRepository repo, RedmineIssue issue, String value, Lookups lookups) {
         if(value == null) {
             return null;
         }
         try {
             Integer id = Integer.valueOf(value);
-            for (RedmineUser ru : repo.getUsers(issue.getIssue().getProject())) {
-                if (ru.getId().equals(id)) {
-                    return ru.getUser().getFullName() + " (ID: " + id.toString() + ")";
-                }
+            RedmineUser ru = repo.getUser(issue.getIssue().getProject(), id);
+            if (ru != null) {
+                return ru.getUser().getFullName() + " (ID: " + id.toString() + ")";
             }
         } catch (NumberFormatException ex) {}
-        return "(ID: " + value + ")";
+        return lookups.unresolved(value);
     }
     
-    private static String formatProject(RedmineRepository repo, RedmineIssue issue, String value) {
+    private static String formatProject(RedmineRepository repo, RedmineIssue issue, String value, Lookups lookups) {
         if(value == null) {
             return null;
         }
@@ -327,7 +399,7 @@ public class JournalDisplay extends javax.swing.JPanel {
             NestedProject np = repo.getProjects().get(id);
             return np.toString() + " (ID: " + id.toString() + ")";
         } catch (NumberFormatException | NullPointerException ex) {}
-        return "(ID: " + value + ")";
+        return lookups.unresolved(value);
     }
     
     private static String formatBool(RedmineRepository repo, RedmineIssue issue, String value) {
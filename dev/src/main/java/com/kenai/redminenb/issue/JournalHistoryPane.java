@@ -0,0 +1,260 @@
+/*
+ * Copyright 2015 Matthias Bläsing.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kenai.redminenb.issue;
+
+import com.kenai.redminenb.issue.JournalDisplay.JournalData;
+import java.awt.Dimension;
+import java.awt.Insets;
+import java.awt.Rectangle;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import javax.swing.JPanel;
+import javax.swing.JViewport;
+import javax.swing.SwingUtilities;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+/**
+ * Vertical list of journal entries, that only creates components for the
+ * entries in the visible area of the enclosing viewport (plus a small
+ * buffer).
+ *
+ * Entries, that were not yet displayed, are assumed to have an estimated
+ * height, the real height is recorded once they are laid out. Displays of
+ * entries scrolled out of view are reused for the entries scrolled into
+ * view.
+ *
+ * Must only be accessed on the EDT.
+ *
+ * @author matthias
+ */
+class JournalHistoryPane extends JPanel {
+    private static final int ESTIMATED_HEIGHT = 80;
+    /**
+     * Number of entries materialized above and below the visible area.
+     */
+    private static final int BUFFER_ENTRIES = 3;
+    private static final int MAX_POOL_SIZE = 20;
+
+    // entries sorted by position, heights holds the height of the entry
+    // with the same index
+    private final List<JournalData> entries = new ArrayList<>();
+    private final List<Integer> heights = new ArrayList<>();
+    private final Map<JournalData, JournalDisplay> displays = new IdentityHashMap<>();
+    private final Deque<JournalDisplay> pool = new ArrayDeque<>();
+    private JViewport viewport;
+    private boolean updateScheduled;
+
+    private final ChangeListener viewportListener = new ChangeListener() {
+        @Override
+        public void stateChanged(ChangeEvent e) {
+            scheduleUpdate();
+        }
+    };
+
+    JournalHistoryPane() {
+        super(null);
+        setOpaque(false);
+    }
+
+    void clear() {
+        for (JournalDisplay jd : displays.values()) {
+            release(jd);
+        }
+        displays.clear();
+        entries.clear();
+        heights.clear();
+        revalidate();
+        repaint();
+    }
+
+    /**
+     * Add entries, they are placed by their position.
+     */
+    void addEntries(Collection<JournalData> newEntries) {
+        for (JournalData jd : newEntries) {
+            int index = entries.size();
+            while (index > 0 && entries.get(index - 1).getPos() > jd.getPos()) {
+                index--;
+            }
+            entries.add(index, jd);
+            heights.add(index, ESTIMATED_HEIGHT);
+        }
+        revalidate();
+        scheduleUpdate();
+    }
+
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        viewport = (JViewport) SwingUtilities.getAncestorOfClass(JViewport.class, this);
+        if (viewport != null) {
+            viewport.addChangeListener(viewportListener);
+        }
+        scheduleUpdate();
+    }
+
+    @Override
+    public void removeNotify() {
+        if (viewport != null) {
+            viewport.removeChangeListener(viewportListener);
+            viewport = null;
+        }
+        super.removeNotify();
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        if (isPreferredSizeSet()) {
+            return super.getPreferredSize();
+        }
+        Insets insets = getInsets();
+        int width = 0;
+        for (JournalDisplay jd : displays.values()) {
+            width = Math.max(width, jd.getPreferredSize().width);
+        }
+        int height = 0;
+        for (Integer h : heights) {
+            height += h;
+        }
+        return new Dimension(width + insets.left + insets.right,
+                height + insets.top + insets.bottom);
+    }
+
+    @Override
+    public Dimension getMaximumSize() {
+        return new Dimension(Integer.MAX_VALUE, getPreferredSize().height);
+    }
+
+    @Override
+    public void doLayout() {
+        Insets insets = getInsets();
+        int width = getWidth() - insets.left - insets.right;
+        int y = insets.top;
+        boolean heightChanged = false;
+        for (int i = 0; i < entries.size(); i++) {
+            JournalDisplay jd = displays.get(entries.get(i));
+            if (jd != null) {
+                int height = jd.getPreferredSize().height;
+                if (height != heights.get(i)) {
+                    heights.set(i, height);
+                    heightChanged = true;
+                }
+                jd.setBounds(insets.left, y, width, height);
+            }
+            y += heights.get(i);
+        }
+        if (heightChanged) {
+            // The measured heights change the preferred size and the
+            // visible entries
+            revalidate();
+            scheduleUpdate();
+        }
+    }
+
+    private void scheduleUpdate() {
+        if (updateScheduled) {
+            return;
+        }
+        updateScheduled = true;
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                updateScheduled = false;
+                updateVisibleEntries();
+            }
+        });
+    }
+
+    /**
+     * Create the displays for the visible entries and release the others.
+     */
+    private void updateVisibleEntries() {
+        Rectangle visible = getVisibleRect();
+        int first = 0;
+        int last = -1;
+        if (!visible.isEmpty() && !entries.isEmpty()) {
+            int top = getInsets().top;
+            first = -1;
+            for (int i = 0; i < entries.size(); i++) {
+                int bottom = top + heights.get(i);
+                if (first < 0 && bottom > visible.y) {
+                    first = i;
+                }
+                if (top < visible.y + visible.height) {
+                    last = i;
+                } else {
+                    break;
+                }
+                top = bottom;
+            }
+            if (first < 0) {
+                first = entries.size() - 1;
+            }
+            first = Math.max(0, first - BUFFER_ENTRIES);
+            last = Math.min(entries.size() - 1, Math.max(last, first) + BUFFER_ENTRIES);
+        }
+
+        List<JournalData> wanted = last < first
+                ? new ArrayList<JournalData>()
+                : entries.subList(first, last + 1);
+        Map<JournalData, Boolean> wantedSet = new IdentityHashMap<>();
+        for (JournalData data : wanted) {
+            wantedSet.put(data, Boolean.TRUE);
+        }
+
+        boolean changed = false;
+        Iterator<Map.Entry<JournalData, JournalDisplay>> it = displays.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<JournalData, JournalDisplay> entry = it.next();
+            if (!wantedSet.containsKey(entry.getKey())) {
+                release(entry.getValue());
+                it.remove();
+                changed = true;
+            }
+        }
+        for (JournalData data : wanted) {
+            if (!displays.containsKey(data)) {
+                JournalDisplay jd = pool.poll();
+                if (jd == null) {
+                    jd = new JournalDisplay();
+                }
+                jd.setJournalData(data);
+                add(jd);
+                displays.put(data, jd);
+                changed = true;
+            }
+        }
+        if (changed) {
+            revalidate();
+            repaint();
+        }
+    }
+
+    private void release(JournalDisplay jd) {
+        remove(jd);
+        if (pool.size() < MAX_POOL_SIZE) {
+            pool.push(jd);
+        }
+    }
+}
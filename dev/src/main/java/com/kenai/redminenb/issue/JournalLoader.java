@@ -0,0 +1,130 @@
+/*
+ * Copyright 2015 Matthias Bläsing.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kenai.redminenb.issue;
+
+import com.kenai.redminenb.issue.JournalDisplay.JournalData;
+import com.taskadapter.redmineapi.bean.Journal;
+import java.awt.EventQueue;
+import java.util.ArrayList;
+import java.util.List;
+import javax.swing.SwingUtilities;
+import org.openide.util.RequestProcessor;
+
+/**
+ * Fill the journal history of an issue panel without blocking the EDT.
+ *
+ * The journal entries are split into chunks, which are rendered in parallel
+ * off the EDT. The newest chunk is submitted first and each chunk is added
+ * to the history as soon as it is rendered.
+ *
+ * Initially only the newest entries are rendered, older entries are rendered
+ * on request (see loadOlder).
+ *
+ * @author matthias
+ */
+class JournalLoader {
+    private static final int CHUNK_SIZE = 10;
+    /**
+     * Number of entries rendered on start and per loadOlder call.
+     */
+    private static final int BATCH_SIZE = 50;
+    private static final RequestProcessor RP = new RequestProcessor("Redmine journal renderer", // NOI18N
+            Runtime.getRuntime().availableProcessors());
+
+    private final RedmineIssue redmineIssue;
+    private final JournalHistoryPane journalPane;
+    private final List<Journal> journals;
+    private final List<RequestProcessor.Task> tasks = new ArrayList<>();
+    private volatile boolean cancelled;
+    // index of the oldest entry submitted for rendering
+    private int loadedFrom;
+
+    /**
+     * @param journals entries of the issue sorted by creation date
+     */
+    JournalLoader(RedmineIssue redmineIssue, JournalHistoryPane journalPane, List<Journal> journals) {
+        this.redmineIssue = redmineIssue;
+        this.journalPane = journalPane;
+        this.journals = journals;
+        this.loadedFrom = journals.size();
+    }
+
+    /**
+     * Clear the pane and start rendering - must be called on the EDT.
+     */
+    void start() {
+        assert SwingUtilities.isEventDispatchThread();
+        journalPane.clear();
+        loadOlder();
+    }
+
+    /**
+     * Render the next batch of older entries - must be called on the EDT.
+     */
+    void loadOlder() {
+        assert SwingUtilities.isEventDispatchThread();
+        int batchStart = Math.max(0, loadedFrom - BATCH_SIZE);
+        for (int end = loadedFrom; end > batchStart; end -= CHUNK_SIZE) {
+            final int chunkStart = Math.max(batchStart, end - CHUNK_SIZE);
+            final int chunkEnd = end;
+            tasks.add(RP.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (cancelled) {
+                        return;
+                    }
+                    final List<JournalData> chunk = new ArrayList<>(chunkEnd - chunkStart);
+                    for (int i = chunkEnd - 1; i >= chunkStart; i--) {
+                        chunk.add(JournalDisplay.buildJournalData(redmineIssue, journals.get(i), i));
+                    }
+                    EventQueue.invokeLater(new Runnable() {
+                        @Override
+                        public void run() {
+                            publish(chunk);
+                        }
+                    });
+                }
+            }));
+        }
+        loadedFrom = batchStart;
+    }
+
+    /**
+     * @return number of entries not yet rendered - must be called on the EDT
+     */
+    int getOlderCount() {
+        return loadedFrom;
+    }
+
+    /**
+     * Stop adding entries to the pane - must be called on the EDT.
+     */
+    void cancel() {
+        assert SwingUtilities.isEventDispatchThread();
+        cancelled = true;
+        for (RequestProcessor.Task task : tasks) {
+            task.cancel();
+        }
+    }
+
+    private void publish(List<JournalData> chunk) {
+        if (cancelled) {
+            return;
+        }
+        journalPane.addEntries(chunk);
+    }
+}
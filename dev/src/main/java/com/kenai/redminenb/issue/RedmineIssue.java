@@ -112,6 +112,10 @@ public final class RedmineIssue {
 
     private final PropertyChangeSupport support;
 
+    // updated_on of the revision the journals were last fetched for, null
+    // if they were never fetched
+    private volatile Date journalsUpdatedOn;
+
     private Object localSummary;
     private Object localDescription;
 
@@ -248,13 +252,33 @@ public final class RedmineIssue {
         }
     }
 
+    /**
+     * Refresh the issue data. The journals are only fetched, if the issue
+     * was updated since they were fetched the last time.
+     */
     public synchronized boolean refresh() {
+        if (!refreshHeader()) {
+            return false;
+        }
+        return isJournalsLoaded() || refreshJournals();
+    }
+
+    /**
+     * Refresh the issue data without the journals. If the issue was not
+     * updated since the journals were fetched, they stay valid, else the
+     * journals of the old revision are kept until refreshJournals is called.
+     *
+     * @see #isJournalsLoaded()
+     */
+    public synchronized boolean refreshHeader() {
         assert !SwingUtilities.isEventDispatchThread() : "Accessing remote host. Do not call in awt"; // NOI18N
 
         try {
             if (issue != null && issue.getId() != null) {
-                setIssue(getRepository().getIssueManager().getIssueById(
-                        issue.getId(), Include.journals, Include.attachments, Include.watchers));
+                com.taskadapter.redmineapi.bean.Issue header = getRepository().getIssueManager().getIssueById(
+                        issue.getId(), Include.attachments, Include.watchers);
+                header.addJournals(issue.getJournals());
+                setIssue(header);
             }
             return true;
         } catch (RedmineException | RuntimeException ex) {
@@ -263,6 +287,56 @@ public final class RedmineIssue {
         return false;
     }
 
+    /**
+     * Refresh the issue data including the journals.
+     * 
+     * If the header is current (refreshHeader was called before), only the
+     * journals are fetched and the attachments and watchers of the header
+     * are kept.
+     */
+    public synchronized boolean refreshJournals() {
+        assert !SwingUtilities.isEventDispatchThread() : "Accessing remote host. Do not call in awt"; // NOI18N
+
+        try {
+            if (issue != null && issue.getId() != null) {
+                com.taskadapter.redmineapi.bean.Issue full = getRepository().getIssueManager().getIssueById(
+                        issue.getId(), Include.journals);
+                if (full.getUpdatedOn() != null && full.getUpdatedOn().equals(issue.getUpdatedOn())) {
+                    full.addAttachments(issue.getAttachments());
+                    full.addWatchers(issue.getWatchers());
+                } else {
+                    // Updated since the header was fetched
+                    full = getRepository().getIssueManager().getIssueById(
+                            issue.getId(), Include.journals, Include.attachments, Include.watchers);
+                }
+                journalsUpdatedOn = full.getUpdatedOn();
+                setIssue(full);
+            }
+            return true;
+        } catch (RedmineException | RuntimeException ex) {
+            ExceptionHandler.handleException(LOG, "Can't refresh Redmine issue", ex);
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the journals of the current revision of the issue are
+     * loaded
+     */
+    public boolean isJournalsLoaded() {
+        Date loaded = journalsUpdatedOn;
+        com.taskadapter.redmineapi.bean.Issue current = issue;
+        return loaded != null && current != null && loaded.equals(current.getUpdatedOn());
+    }
+
+    /**
+     * @return updated_on of the revision the journals were last fetched for,
+     * null if they were never fetched
+     */
+    public Date getJournalsUpdatedOn() {
+        return journalsUpdatedOn;
+    }
+
     public void addComment(String comment, boolean resolve) {
         Integer oldStatusId = issue.getStatusId();
 
@@ -312,6 +386,10 @@ public final class RedmineIssue {
 
     public void setIssue(com.taskadapter.redmineapi.bean.Issue issue) {
         this.issue = issue;
+        if (!isNew()) {
+            repository.getIssueStore().put(issue);
+            repository.getTextIndex().update(issue);
+        }
         support.firePropertyChange(Issue.EVENT_ISSUE_DATA_CHANGED, null, null);
     }
 
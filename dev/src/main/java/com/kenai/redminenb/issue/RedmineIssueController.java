@@ -86,8 +86,13 @@ public class RedmineIssueController implements IssueController {
 
                 @Override
                 public void run() {
-                    redmineIssue.refresh();
+                    // Show the issue before its history is loaded
+                    boolean refreshed = redmineIssue.refreshHeader();
                     issuePanel.initIssue(null);
+                    if (refreshed && !redmineIssue.isJournalsLoaded()
+                            && redmineIssue.refreshJournals()) {
+                        issuePanel.initIssue(null);
+                    }
                 }
             });
             viewWatchers.setEnabled(redmineIssue.getRepository().isFeatureWatchers());
@@ -1,7 +1,6 @@
 package com.kenai.redminenb.issue;
 
 import com.kenai.redminenb.Redmine;
-import com.kenai.redminenb.issue.JournalDisplay.JournalData;
 import com.kenai.redminenb.ui.Defaults;
 import com.kenai.redminenb.user.RedmineUser;
 import com.kenai.redminenb.util.ListComboBoxModel;
@@ -100,7 +99,9 @@ import org.openide.windows.WindowManager;
  * @author Anchialas <anchialas@gmail.com>
  */
 @NbBundle.Messages({
-    "BTN_AddAttachment=Add attachment"
+    "BTN_AddAttachment=Add attachment",
+    "# {0} - number of entries",
+    "BTN_ShowOlderJournals=Show older entries ({0} more)"
 })
 public class RedmineIssuePanel extends VerticalScrollPane {
    private static final Logger LOG = Logger.getLogger(RedmineIssuePanel.class.getName());
@@ -113,6 +114,10 @@ public class RedmineIssuePanel extends VerticalScrollPane {
    private JPopupMenu toolbarPopup;
    private final ExpandablePanel commentPanel;
    private final ExpandablePanel logtimePanel;
+   private final JournalHistoryPane journalHistoryPane = new JournalHistoryPane();
+   private final LinkButton olderJournalsButton = new LinkButton();
+   // Only accessed on the EDT
+   private JournalLoader journalLoader;
    
    private final static int CUSTOM_ROW_START = 9;
    private final static int CUSTOM_ROW_END = 18;
@@ -149,6 +154,20 @@ public class RedmineIssuePanel extends VerticalScrollPane {
    public RedmineIssuePanel(RedmineIssue redmineIssue) {
       this.redmineIssue = redmineIssue;
       initComponents();
+      olderJournalsButton.setAlignmentX(Component.LEFT_ALIGNMENT);
+      olderJournalsButton.setVisible(false);
+      olderJournalsButton.addActionListener(new ActionListener() {
+          @Override
+          public void actionPerformed(ActionEvent e) {
+              if (journalLoader != null) {
+                  journalLoader.loadOlder();
+              }
+              updateOlderJournalsButton();
+          }
+      });
+      journalPane.add(olderJournalsButton);
+      journalHistoryPane.setAlignmentX(Component.LEFT_ALIGNMENT);
+      journalPane.add(journalHistoryPane);
       projectComboBox.addItemListener(projectTrackerListener);
       trackerComboBox.addItemListener(projectTrackerListener);
       updateCommentTabPanel.setVisible(false);
@@ -165,6 +184,12 @@ public class RedmineIssuePanel extends VerticalScrollPane {
       });
     }
 
+    private void updateOlderJournalsButton() {
+        int olderCount = journalLoader == null ? 0 : journalLoader.getOlderCount();
+        olderJournalsButton.setText(Bundle.BTN_ShowOlderJournals(olderCount));
+        olderJournalsButton.setVisible(olderCount > 0);
+    }
+
     public void clearCustomFields() {
         for (CustomFieldComponent cfc : customFields) {
             issuePane.remove(cfc);
@@ -269,17 +294,13 @@ public class RedmineIssuePanel extends VerticalScrollPane {
       final Holder<IssueStatus> issueStatus = new Holder<>();
       final Holder<IssuePriority> ip = new Holder<>();
       final Holder<NestedProject> defaultProject = new Holder<>();
-      final ArrayList<JournalData> journal = new ArrayList<>();
+      final List<Journal> journalEntries = new ArrayList<>();
       
       if(issue != null) {
           issueStatus.value = redmineIssue.getRepository().getStatus(issue.getStatusId());
           ip.value = redmineIssue.getRepository().getIssuePriority(issue.getPriorityId());
-          List<Journal> journalEntries = new ArrayList<>(issue.getJournals());
+          journalEntries.addAll(issue.getJournals());
           Collections.sort(journalEntries, RedmineUtil.JournalComparator.SINGLETON);
-          for (int i = 0; i < journalEntries.size(); i++) {
-              journal.add(JournalDisplay.buildJournalData(
-                      redmineIssue, journalEntries.get(i), i));
-          }
       } else {
           ip.value = redmineIssue.getRepository().getDefaultIssuePriority();
           defaultProject.value = redmineIssue
@@ -366,12 +387,14 @@ public class RedmineIssuePanel extends VerticalScrollPane {
                    } else {
                        journalOuterPane.setVisible(false);
                    }
-                   journalPane.removeAll();
-                   for (JournalData jd: journal) {
-                       journalPane.add(new JournalDisplay(jd));
+                   // The journal entries are rendered in the background and
+                   // added as they become available
+                   if (journalLoader != null) {
+                       journalLoader.cancel();
                    }
-                   journalPane.doLayout();
-                   journalPane.revalidate();
+                   journalLoader = new JournalLoader(redmineIssue, journalHistoryPane, journalEntries);
+                   journalLoader.start();
+                   updateOlderJournalsButton();
 
                    attachmentPanel.removeAll();
                    if (issue.getAttachments() != null) {
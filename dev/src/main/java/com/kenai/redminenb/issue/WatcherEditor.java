@@ -15,9 +15,12 @@
  */
 package com.kenai.redminenb.issue;
 
+import com.kenai.redminenb.repository.RedmineRepository;
 import com.kenai.redminenb.user.RedmineUser;
+import com.kenai.redminenb.user.UserIndex;
 import com.taskadapter.redmineapi.IssueManager;
 import com.taskadapter.redmineapi.bean.Issue;
+import com.taskadapter.redmineapi.bean.Project;
 import com.taskadapter.redmineapi.bean.Watcher;
 import java.awt.Dialog;
 import java.awt.Rectangle;
@@ -41,38 +44,59 @@ public class WatcherEditor {
     }
     
     public void run()  {
-        new SwingWorker() {
+        final RedmineRepository repository = redmineIssue.getRepository();
+        final Project project = redmineIssue.getIssue().getProject();
+        originalWatchers = new ArrayList<>(redmineIssue.getIssue().getWatchers());
+        // Open the dialog at once, the locally known users and then the
+        // members of the project are added as soon as they are available -
+        // the local users may have to be read from the metadata snapshot
+        users = new ArrayList<>();
+        if (repository.getCurrentUser() != null) {
+            users.add(repository.getCurrentUser());
+        }
+        final WatchersEditorFrame we = new WatchersEditorFrame(originalWatchers, users);
+
+        new SwingWorker<Collection<RedmineUser>, Collection<RedmineUser>>() {
 
             @Override
-            protected Object doInBackground() throws Exception {
-                originalWatchers = new ArrayList<>(redmineIssue.getIssue().getWatchers());
-                users = redmineIssue.getRepository().getUsers(redmineIssue.getIssue().getProject());
-                return null;
+            protected Collection<RedmineUser> doInBackground() throws Exception {
+                Collection<RedmineUser> localUsers = repository.getCachedUsers(project);
+                if (localUsers == null) {
+                    localUsers = repository.getUserIndex().getRecent();
+                }
+                publish(localUsers);
+                return repository.getUsers(project);
+            }
+
+            @Override
+            protected void process(List<Collection<RedmineUser>> chunks) {
+                for (Collection<RedmineUser> chunk : chunks) {
+                    we.addAvailableUsers(chunk);
+                }
             }
 
             @Override
             protected void done() {
                 try {
-                    // Pull Exception into EDT
-                    get();
+                    we.addAvailableUsers(get());
                 } catch (InterruptedException | ExecutionException ex) {
                     throw new RuntimeException(ex);
                 }
-                WatchersEditorFrame we = new WatchersEditorFrame(originalWatchers, users);
-                DialogDescriptor dd = new DialogDescriptor(we, "Watchers", true, null);
-                Dialog d = DialogDisplayer.getDefault().createDialog(dd);
-                d.setSize(500, 400);
-                Rectangle r = Utilities.findCenterBounds(d.getSize());
-                d.setBounds(r);
-                d.setVisible(true);
-                
-                newWatchers = we.getWatchers();
-                
-                if(dd.getValue() == DialogDescriptor.OK_OPTION) {
-                    saveIssueData();
-                }
             }
         }.execute();
+
+        DialogDescriptor dd = new DialogDescriptor(we, "Watchers", true, null);
+        Dialog d = DialogDisplayer.getDefault().createDialog(dd);
+        d.setSize(500, 400);
+        Rectangle r = Utilities.findCenterBounds(d.getSize());
+        d.setBounds(r);
+        d.setVisible(true);
+
+        newWatchers = we.getWatchers();
+
+        if(dd.getValue() == DialogDescriptor.OK_OPTION) {
+            saveIssueData();
+        }
     }
     
     private void saveIssueData() {
@@ -89,8 +113,10 @@ public class WatcherEditor {
                 Issue issue = redmineIssue.getIssue();
                 IssueManager manager = redmineIssue.getRepository().getIssueManager();
                 
+                UserIndex userIndex = redmineIssue.getRepository().getUserIndex();
                 for(Watcher added: addedWatchers) {
                     manager.addWatcherToIssue(added, issue);
+                    userIndex.markUsed(added.getId());
                 }
                 
                 for(Watcher removed: removedWatchers) {
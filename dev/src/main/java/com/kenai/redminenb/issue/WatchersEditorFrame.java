@@ -43,22 +43,8 @@ public class WatchersEditorFrame extends javax.swing.JPanel {
     public WatchersEditorFrame(List<Watcher> currentWatchers, Collection<RedmineUser> users) {
         initComponents();
         
-        Set<Integer> watcherIds = new HashSet<>();
-        for(Watcher w: currentWatchers) {
-            watcherIds.add(w.getId());
-        }
-        
-        List<Watcher> potentialWatchers = new ArrayList<>();
-        for(RedmineUser ru: users) {
-            if(! watcherIds.contains(ru.getId())) {
-                Watcher w = WatcherFactory.create(ru.getId());
-                w.setName(ru.getUser().getFullName());
-                potentialWatchers.add(w);
-            }
-        }
-        
-        getAvailableUsersModel().addAll(potentialWatchers);
         getWatchersModel().addAll(currentWatchers);
+        addAvailableUsers(users);
 
         availableFilter.addKeyListener(new KeyAdapter() {
 
@@ -173,6 +159,32 @@ public class WatchersEditorFrame extends javax.swing.JPanel {
         });
     }
 
+    /**
+     * Add users to the list of available users - users, that are already
+     * listed or watchers, are skipped. The current filter is applied to the
+     * added users.
+     */
+    public final void addAvailableUsers(Collection<RedmineUser> users) {
+        Set<Integer> knownIds = new HashSet<>();
+        for(Watcher w: getWatchersModel().getElements()) {
+            knownIds.add(w.getId());
+        }
+        for(Watcher w: getAvailableUsersModel().getElements()) {
+            knownIds.add(w.getId());
+        }
+        
+        List<Watcher> potentialWatchers = new ArrayList<>();
+        for(RedmineUser ru: users) {
+            if(knownIds.add(ru.getId())) {
+                Watcher w = WatcherFactory.create(ru.getId());
+                w.setName(ru.getUser().getFullName());
+                potentialWatchers.add(w);
+            }
+        }
+        
+        getAvailableUsersModel().addAll(potentialWatchers);
+    }
+
     private void removeWatcher(Watcher watcherObject) {
         getWatchersModel().remove((Watcher) watcherObject);
         getAvailableUsersModel().add((Watcher) watcherObject);
@@ -0,0 +1,367 @@
+/*
+ * Copyright 2015 Matthias Bläsing.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kenai.redminenb.query;
+
+import com.kenai.redminenb.repository.IssueStore;
+import com.kenai.redminenb.repository.IssueTextIndex;
+import com.kenai.redminenb.repository.RedmineRepository;
+import com.kenai.redminenb.user.RedmineUser;
+import com.kenai.redminenb.util.NestedProject;
+import com.taskadapter.redmineapi.bean.Issue;
+import com.taskadapter.redmineapi.bean.IssueStatus;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Evaluate the filters of a query against locally held issue data.
+ *
+ * The evaluator mirrors the translation of the filters to the REST API
+ * done by {@link RedmineQuery} and the filter semantics of the server:
+ * without status filter only open issues match, the project filter includes
+ * the subprojects and multiple values of a filter are alternatives.
+ *
+ * Text filters are narrowed down with the {@link IssueTextIndex} of the
+ * repository, project and status filters with the id index of the
+ * {@link IssueStore}.
+ *
+ * The issue store holds no watchers, so queries filtering by watcher can
+ * only be evaluated by the server (see {@link #canEvaluate()}).
+ *
+ * @author matthias
+ */
+class LocalQueryEvaluator {
+    private static final Set<String> SUPPORTED_PARAMETERS = new HashSet<>(Arrays.asList(
+            "tracker_id", "status_id", "priority_id", "assigned_to_id", // NOI18N
+            "category_id", "fixed_version_id", "project_id", // NOI18N
+            "query", "is_subject", "is_description")); // NOI18N
+
+    private final RedmineRepository repository;
+    private final Map<String, ParameterValue[]> parameters;
+    private final String queryStr;
+    private final boolean searchSubject;
+    private final boolean searchDescription;
+    // ids of the issues, that may match the text filters, null if not
+    // restricted by the text index
+    private final Set<Integer> textCandidates;
+    private Map<Integer, NestedProject> projects;
+
+    LocalQueryEvaluator(RedmineRepository repository, Map<String, ParameterValue[]> parameters) {
+        this.repository = repository;
+        this.parameters = parameters;
+        this.queryStr = ParameterValue.flattenList(parameters.get("query")); // NOI18N
+        this.searchSubject = isSet("is_subject") && StringUtils.isNotBlank(queryStr); // NOI18N
+        this.searchDescription = isSet("is_description") && StringUtils.isNotBlank(queryStr); // NOI18N
+        this.textCandidates = findTextCandidates();
+    }
+
+    private Set<Integer> findTextCandidates() {
+        Set<Integer> candidates = null;
+        IssueTextIndex index = repository.getTextIndex();
+        if (searchSubject) {
+            candidates = index.search(queryStr, IssueTextIndex.Field.SUBJECT);
+        }
+        if (searchDescription) {
+            Set<Integer> descriptionCandidates = index.search(queryStr, IssueTextIndex.Field.DESCRIPTION);
+            if (candidates == null) {
+                candidates = descriptionCandidates;
+            } else if (descriptionCandidates != null) {
+                candidates.retainAll(descriptionCandidates);
+            }
+        }
+        return candidates;
+    }
+
+    private boolean isSet(String parameter) {
+        return StringUtils.isNotBlank(ParameterValue.flattenList(parameters.get(parameter)));
+    }
+
+    /**
+     * @return true if all filters of the query can be evaluated locally
+     */
+    boolean canEvaluate() {
+        for (String parameter : parameters.keySet()) {
+            if (isSet(parameter) && !SUPPORTED_PARAMETERS.contains(parameter)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the ids of the only issues, that can match the query, null if
+     * all issues have to be checked
+     */
+    Collection<Integer> getCandidates() {
+        return textCandidates == null ? null : Collections.unmodifiableSet(textCandidates);
+    }
+
+    /**
+     * @return the ids of the stored issues, that can match the project and
+     * status filters of the query (found by the id index of the store)
+     */
+    Collection<Integer> getStoreCandidates(IssueStore store) {
+        return store.getIds(getProjectCandidates(), getStatusCandidates());
+    }
+
+    /**
+     * @return the ids of the filtered projects including their subprojects,
+     * null if not filtered by project
+     */
+    private Collection<Integer> getProjectCandidates() {
+        ParameterValue[] values = parameters.get("project_id"); // NOI18N
+        if (StringUtils.isBlank(ParameterValue.flattenList(values))) {
+            return null;
+        }
+        Set<Integer> result = new HashSet<>();
+        for (ParameterValue pv : values) {
+            if (pv == null) {
+                continue;
+            }
+            try {
+                result.add(Integer.valueOf(pv.getValue()));
+            } catch (NumberFormatException ex) {
+                // Not a project id
+            }
+        }
+        for (NestedProject np : getProjects().values()) {
+            for (NestedProject parent = np.getParent(); parent != null; parent = parent.getParent()) {
+                if (result.contains(parent.getProject().getId())) {
+                    result.add(np.getProject().getId());
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the ids of the filtered status, null if not restricted or the
+     * status are unknown
+     */
+    private Collection<Integer> getStatusCandidates() {
+        ParameterValue[] values = parameters.get("status_id"); // NOI18N
+        boolean open = false;
+        boolean closed = false;
+        Set<Integer> result = new HashSet<>();
+        if (StringUtils.isBlank(ParameterValue.flattenList(values))) {
+            open = true;
+        } else {
+            for (ParameterValue pv : values) {
+                if (pv == null) {
+                    continue;
+                }
+                switch (pv.getValue()) {
+                    case "*": // NOI18N
+                        return null;
+                    case "open": // NOI18N
+                        open = true;
+                        break;
+                    case "closed": // NOI18N
+                        closed = true;
+                        break;
+                    default:
+                        try {
+                            result.add(Integer.valueOf(pv.getValue()));
+                        } catch (NumberFormatException ex) {
+                            return null;
+                        }
+                }
+            }
+        }
+        if (open || closed) {
+            Collection<? extends IssueStatus> statuses = repository.getStatuses();
+            if (statuses == null) {
+                return null;
+            }
+            for (IssueStatus status : statuses) {
+                if (status.isClosed() ? closed : open) {
+                    result.add(status.getId());
+                }
+            }
+            if (open) {
+                // Issues without status count as open
+                result.add(null);
+            }
+        }
+        return result;
+    }
+
+    boolean matches(Issue issue) {
+        if (textCandidates != null && !textCandidates.contains(issue.getId())) {
+            return false;
+        }
+        if (!matchesStatus(issue)) {
+            return false;
+        }
+        for (Entry<String, ParameterValue[]> entry : parameters.entrySet()) {
+            ParameterValue[] values = entry.getValue();
+            if (StringUtils.isBlank(ParameterValue.flattenList(values))) {
+                continue;
+            }
+            switch (entry.getKey()) {
+                case "tracker_id": // NOI18N
+                    if (!matchesId(issue.getTracker() == null ? null : issue.getTracker().getId(), values)) {
+                        return false;
+                    }
+                    break;
+                case "priority_id": // NOI18N
+                    if (!matchesId(issue.getPriorityId(), values)) {
+                        return false;
+                    }
+                    break;
+                case "assigned_to_id": // NOI18N
+                    if (!matchesId(issue.getAssignee() == null ? null : issue.getAssignee().getId(), values)) {
+                        return false;
+                    }
+                    break;
+                case "category_id": // NOI18N
+                    if (!matchesId(issue.getCategory() == null ? null : issue.getCategory().getId(), values)) {
+                        return false;
+                    }
+                    break;
+                case "fixed_version_id": // NOI18N
+                    if (!matchesId(issue.getTargetVersion() == null ? null : issue.getTargetVersion().getId(), values)) {
+                        return false;
+                    }
+                    break;
+                case "project_id": // NOI18N
+                    if (!matchesProject(issue.getProject() == null ? null : issue.getProject().getId(), values)) {
+                        return false;
+                    }
+                    break;
+                default:
+                    // Status and text filters are handled separately
+            }
+        }
+        // The text index matches tokens, the filter matches substrings
+        if (searchSubject && !StringUtils.containsIgnoreCase(issue.getSubject(), queryStr)) {
+            return false;
+        }
+        if (searchDescription && !StringUtils.containsIgnoreCase(issue.getDescription(), queryStr)) {
+            return false;
+        }
+        return true;
+    }
+
+    private boolean matchesId(Integer id, ParameterValue[] values) {
+        for (ParameterValue pv : values) {
+            if (pv != null && ParameterValue.NONE_VALUE.equals(pv.getValue())) {
+                return id == null;
+            }
+        }
+        if (id == null) {
+            return false;
+        }
+        for (ParameterValue pv : values) {
+            if (pv == null) {
+                continue;
+            }
+            if ("me".equals(pv.getValue())) { // NOI18N
+                RedmineUser currentUser = repository.getCurrentUser();
+                if (currentUser != null && id.equals(currentUser.getId())) {
+                    return true;
+                }
+            } else if (id.toString().equals(pv.getValue())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean matchesStatus(Issue issue) {
+        ParameterValue[] values = parameters.get("status_id"); // NOI18N
+        if (StringUtils.isBlank(ParameterValue.flattenList(values))) {
+            // The server only returns open issues, if no status is requested
+            return !isClosed(issue.getStatusId());
+        }
+        for (ParameterValue pv : values) {
+            if (pv == null) {
+                continue;
+            }
+            switch (pv.getValue()) {
+                case "*": // NOI18N
+                    return true;
+                case "open": // NOI18N
+                    if (!isClosed(issue.getStatusId())) {
+                        return true;
+                    }
+                    break;
+                case "closed": // NOI18N
+                    if (isClosed(issue.getStatusId())) {
+                        return true;
+                    }
+                    break;
+                default:
+                    if (issue.getStatusId() != null
+                            && issue.getStatusId().toString().equals(pv.getValue())) {
+                        return true;
+                    }
+            }
+        }
+        return false;
+    }
+
+    private boolean isClosed(Integer statusId) {
+        if (statusId == null) {
+            return false;
+        }
+        IssueStatus status = repository.getStatus(statusId);
+        return status != null && status.isClosed();
+    }
+
+    private Map<Integer, NestedProject> getProjects() {
+        if (projects == null) {
+            projects = repository.getProjects();
+            if (projects == null) {
+                projects = Collections.emptyMap();
+            }
+        }
+        return projects;
+    }
+
+    /**
+     * The issues of the subprojects of a project are part of the project.
+     */
+    private boolean matchesProject(Integer projectId, ParameterValue[] values) {
+        if (projectId == null) {
+            return false;
+        }
+        Set<String> wanted = new HashSet<>();
+        for (ParameterValue pv : values) {
+            if (pv != null) {
+                wanted.add(pv.getValue());
+            }
+        }
+        if (wanted.contains(projectId.toString())) {
+            return true;
+        }
+        NestedProject np = getProjects().get(projectId);
+        for (NestedProject parent = np == null ? null : np.getParent();
+                parent != null; parent = parent.getParent()) {
+            if (wanted.contains(parent.getProject().getId().toString())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -16,24 +16,176 @@
 package com.kenai.redminenb.query;
 
 import com.kenai.redminenb.issue.RedmineIssue;
+import com.taskadapter.redmineapi.bean.Issue;
 import com.taskadapter.redmineapi.bean.IssueCategory;
 import com.taskadapter.redmineapi.bean.Project;
 import com.taskadapter.redmineapi.bean.Tracker;
 import com.taskadapter.redmineapi.bean.User;
 import com.taskadapter.redmineapi.bean.Version;
+import java.text.Collator;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import javax.swing.table.AbstractTableModel;
 
+/**
+ * Table model of the issues of a query.
+ *
+ * The cell values are extracted once per issue revision and stored column
+ * wise (ids as int array, display strings as string arrays). For sorting
+ * each column is ranked once (see {@link #compareRows(int, int, int)}), so
+ * sorting compares ints instead of beans.
+ *
+ * Must only be accessed on the EDT.
+ */
 public class QueryListModel extends AbstractTableModel{
+    private static final int COLUMN_COUNT = 9;
 
     private List<RedmineIssue> issues = new ArrayList<>();
+    private Set<RedmineIssue> issueSet = new HashSet<>();
+    // Issue data the columns were extracted from
+    private Issue[] sources = new Issue[0];
+    private int[] ids = new int[0];
+    // display strings, indexed by column, then row - column 0 is unused
+    private final String[][] values = new String[COLUMN_COUNT][0];
+    // sort rank of the rows, indexed by column, then row - null if not
+    // computed since the last modification
+    private final int[][] sortKeys = new int[COLUMN_COUNT][];
+    private final Collator collator = Collator.getInstance();
 
     public void setIssues(Collection<RedmineIssue> issues) {
         this.issues = new ArrayList<>(issues);
+        this.issueSet = new HashSet<>(issues);
+        sources = new Issue[this.issues.size()];
+        ids = new int[this.issues.size()];
+        for (int column = 1; column < COLUMN_COUNT; column++) {
+            values[column] = new String[this.issues.size()];
+        }
+        for (int row = 0; row < this.issues.size(); row++) {
+            extract(row);
+        }
+        invalidateSortKeys();
         fireTableDataChanged();
     }
+
+    /**
+     * Append the issues, that are not yet part of the model.
+     */
+    public void addIssues(Collection<RedmineIssue> newIssues) {
+        int firstRow = issues.size();
+        for (RedmineIssue issue : newIssues) {
+            if (issueSet.add(issue)) {
+                issues.add(issue);
+            }
+        }
+        if (issues.size() > firstRow) {
+            ensureCapacity(issues.size());
+            for (int row = firstRow; row < issues.size(); row++) {
+                extract(row);
+            }
+            invalidateSortKeys();
+            fireTableRowsInserted(firstRow, issues.size() - 1);
+        }
+    }
+
+    private void ensureCapacity(int size) {
+        if (ids.length >= size) {
+            return;
+        }
+        int capacity = Math.max(size, ids.length + (ids.length >> 1));
+        sources = Arrays.copyOf(sources, capacity);
+        ids = Arrays.copyOf(ids, capacity);
+        for (int column = 1; column < COLUMN_COUNT; column++) {
+            values[column] = Arrays.copyOf(values[column], capacity);
+        }
+    }
+
+    private void extract(int row) {
+        RedmineIssue ri = issues.get(row);
+        Issue issue = ri.getIssue();
+        sources[row] = issue;
+        ids[row] = issue.getId() == null ? 0 : issue.getId();
+        values[1][row] = ri.getSummary();
+        Tracker tracker = issue.getTracker();
+        values[2][row] = tracker == null ? null : tracker.getName();
+        values[3][row] = issue.getPriorityText();
+        values[4][row] = issue.getStatusName();
+        User assignee = issue.getAssignee();
+        values[5][row] = assignee == null ? null : assignee.getFullName();
+        IssueCategory category = issue.getCategory();
+        values[6][row] = category == null ? null : category.getName();
+        Version version = issue.getTargetVersion();
+        values[7][row] = version == null ? null : version.getName();
+        Project project = issue.getProject();
+        values[8][row] = project == null ? null : project.getName() + "(ID: " + project.getId() + ")";
+    }
+
+    /**
+     * Extract the row again, if the issue data was replaced since the last
+     * extraction.
+     */
+    private void validate(int row) {
+        if (issues.get(row).getIssue() != sources[row]) {
+            extract(row);
+            invalidateSortKeys();
+        }
+    }
+
+    private void invalidateSortKeys() {
+        Arrays.fill(sortKeys, null);
+    }
+
+    /**
+     * Compare two rows by the value of a column.
+     */
+    public int compareRows(int column, int row1, int row2) {
+        if (column == 0) {
+            validate(row1);
+            validate(row2);
+            return Integer.compare(ids[row1], ids[row2]);
+        }
+        int[] keys = getSortKeys(column);
+        return Integer.compare(keys[row1], keys[row2]);
+    }
+
+    /**
+     * Rank the values of the column - equal values get the same rank.
+     */
+    private int[] getSortKeys(int column) {
+        if (sortKeys[column] == null) {
+            int rowCount = issues.size();
+            for (int row = 0; row < rowCount; row++) {
+                validate(row);
+            }
+            String[] columnValues = values[column];
+            Set<String> distinct = new HashSet<>();
+            for (int row = 0; row < rowCount; row++) {
+                distinct.add(columnValues[row] == null ? "" : columnValues[row]);
+            }
+            List<String> sorted = new ArrayList<>(distinct);
+            Collections.sort(sorted, collator);
+            Map<String, Integer> ranks = new HashMap<>(sorted.size() * 2);
+            int rank = 0;
+            for (int i = 0; i < sorted.size(); i++) {
+                if (i > 0 && collator.compare(sorted.get(i - 1), sorted.get(i)) != 0) {
+                    rank++;
+                }
+                ranks.put(sorted.get(i), rank);
+            }
+            int[] keys = new int[rowCount];
+            for (int row = 0; row < rowCount; row++) {
+                keys[row] = ranks.get(columnValues[row] == null ? "" : columnValues[row]);
+            }
+            sortKeys[column] = keys;
+        }
+        return sortKeys[column];
+    }
     
     public RedmineIssue getIssue(int pos) {
         return issues.get(pos);
@@ -46,60 +198,30 @@ public class QueryListModel extends AbstractTableModel{
 
     @Override
     public int getColumnCount() {
-        return 9;
+        return COLUMN_COUNT;
     }
 
     @Override
     public Class<?> getColumnClass(int columnIndex) {
-        switch(columnIndex) {
-            case 0:
-                return Integer.class;
-            case 1:
-                return String.class;
-            case 2: 
-                return Tracker.class;
-            case 3:
-                return String.class;
-            case 4:
-                return String.class;
-            case 5:
-                return User.class;
-            case 6:
-                return IssueCategory.class;
-            case 7:
-                return Version.class;
-            case 8:
-                return Project.class;
-            default:
-                return null;
+        if (columnIndex == 0) {
+            return Integer.class;
+        } else if (columnIndex < COLUMN_COUNT) {
+            return String.class;
+        } else {
+            return null;
         }
     }
     
     @Override
     public Object getValueAt(int rowIndex, int columnIndex) {
-        RedmineIssue ri = getIssue(rowIndex);
-        switch(columnIndex) {
-            case 0:
-                return ri.getIssue().getId();
-            case 1:
-                return ri.getSummary();
-            case 2: 
-                return ri.getIssue().getTracker();
-            case 3:
-                return ri.getIssue().getPriorityText();
-            case 4:
-                return ri.getIssue().getStatusName();
-            case 5:
-                return ri.getIssue().getAssignee();
-            case 6:
-                return ri.getIssue().getCategory();
-            case 7:
-                return ri.getIssue().getTargetVersion();
-            case 8:
-                return ri.getIssue().getProject();
-            default:
-                return null;
+        if (columnIndex < 0 || columnIndex >= COLUMN_COUNT) {
+            return null;
+        }
+        validate(rowIndex);
+        if (columnIndex == 0) {
+            return ids[rowIndex];
         }
+        return values[columnIndex][rowIndex];
     }
     
 }
@@ -16,6 +16,7 @@
 package com.kenai.redminenb.query;
 
 import com.kenai.redminenb.issue.RedmineIssue;
+import java.util.List;
 
 /**
  * Notifies changes on a query.
@@ -35,6 +36,21 @@ public interface QueryNotifyListener {
      */
     public void notifyData(RedmineIssue issue);
 
+    /**
+     * A part of the query result was fetched and its issues were notified
+     *
+     * @param issues the issues of the fetched part
+     * @param fetchedParts number of parts fetched so far
+     * @param partCount total number of parts of the result
+     */
+    public void partFetched(List<RedmineIssue> issues, int fetchedParts, int partCount);
+
+    /**
+     * The result set was replaced by the result evaluated against the
+     * locally stored issues, the server result follows
+     */
+    public void localResultAvailable();
+
     /**
      * Query execution was finished
      */
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2015 Matthias Bläsing.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kenai.redminenb.query;
+
+import java.util.Comparator;
+import javax.swing.DefaultRowSorter;
+
+/**
+ * Row sorter for the issue table, that sorts by the precomputed sort keys
+ * of the {@link QueryListModel} instead of comparing the cell values.
+ *
+ * The sorter works on row indices: the value of each cell is its model row
+ * and the comparator of a column asks the model to compare the rows.
+ *
+ * @author matthias
+ */
+class QueryTableRowSorter extends DefaultRowSorter<QueryListModel, Integer> {
+
+    QueryTableRowSorter(final QueryListModel model) {
+        setModelWrapper(new ModelWrapper<QueryListModel, Integer>() {
+            @Override
+            public QueryListModel getModel() {
+                return model;
+            }
+
+            @Override
+            public int getColumnCount() {
+                return model.getColumnCount();
+            }
+
+            @Override
+            public int getRowCount() {
+                return model.getRowCount();
+            }
+
+            @Override
+            public Object getValueAt(int row, int column) {
+                return row;
+            }
+
+            @Override
+            public String getStringAt(int row, int column) {
+                Object value = model.getValueAt(row, column);
+                return value == null ? "" : value.toString();
+            }
+
+            @Override
+            public Integer getIdentifier(int row) {
+                return row;
+            }
+        });
+    }
+
+    @Override
+    public Comparator<?> getComparator(final int column) {
+        final QueryListModel model = getModel();
+        return new Comparator<Integer>() {
+            @Override
+            public int compare(Integer row1, Integer row2) {
+                return model.compareRows(column, row1, row2);
+            }
+        };
+    }
+
+    @Override
+    protected boolean useToString(int column) {
+        return false;
+    }
+}
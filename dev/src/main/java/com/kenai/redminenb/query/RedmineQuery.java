@@ -19,13 +19,17 @@ import com.kenai.redminenb.Redmine;
 import com.kenai.redminenb.RedmineConnector;
 import com.kenai.redminenb.issue.RedmineIssue;
 import com.kenai.redminenb.repository.IssueCache;
+import com.kenai.redminenb.repository.IssueFetchListener;
 import com.kenai.redminenb.repository.RedmineRepository;
+import com.kenai.redminenb.repository.RequestGroup;
 import com.kenai.redminenb.util.ExceptionHandler;
 import com.kenai.redminenb.util.NestedProject;
+import com.kenai.redminenb.util.RedmineUtil;
 import com.kenai.redminenb.util.SafeAutoCloseable;
 import com.taskadapter.redmineapi.AuthenticationException;
 import com.taskadapter.redmineapi.NotFoundException;
 import com.taskadapter.redmineapi.RedmineException;
+import com.taskadapter.redmineapi.RedmineTransportException;
 import com.taskadapter.redmineapi.bean.Issue;
 import com.taskadapter.redmineapi.bean.Project;
 import java.beans.PropertyChangeListener;
@@ -34,8 +38,11 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -56,6 +63,11 @@ import org.openide.util.Mutex;
  */
 public final class RedmineQuery {
     private static final Logger LOG = Logger.getLogger(RedmineQuery.class.getName());
+    /**
+     * Number of consecutive delta refreshes before a full refresh is done
+     * (a full refresh is needed to notice deleted issues).
+     */
+    private static final int FULL_REFRESH_INTERVAL = 6;
 
     private String name;
     private final RedmineRepository repository;
@@ -64,6 +76,17 @@ public final class RedmineQuery {
     private boolean firstRun = true;
     private boolean saved;
     protected long lastRefresh;
+    // Highest updated_on value seen in the result set - base for delta refreshes
+    private volatile Date updatedOnWatermark;
+    private int deltaRefreshCount;
+    // The result set was evaluated locally by the running full refresh
+    private boolean localResult;
+    // true if the filters were changed since the last full refresh
+    private volatile boolean filtersChanged;
+    private final Object refreshLock = new Object();
+    private final Object executionLock = new Object();
+    // Requests of the running (or waiting) refresh, guarded by executionLock
+    private RequestGroup currentExecution;
     private final PropertyChangeSupport support = new PropertyChangeSupport(this);
     //
     private Map<String, ParameterValue[]> parameters = new HashMap<>();
@@ -148,6 +171,9 @@ public final class RedmineQuery {
         boolean changed = ! parameters.equals(this.parameters);
         this.parameters = parameters;
         if (changed) {
+            // The result set does not match the new filters anymore
+            updatedOnWatermark = null;
+            filtersChanged = true;
             firePropertyChanged();
             setSaved(false);
         }
@@ -175,60 +201,367 @@ public final class RedmineQuery {
         doRefresh(autoReresh);
     }
 
+    /**
+     * Refresh the query - a running refresh is superseded.
+     */
     public void refresh() {
-        // @todo what if already running! - cancel task
         doRefresh(false);
     }
 
+    /**
+     * Cancel the running refresh (if any), including its requests in flight.
+     */
+    public void cancel() {
+        RequestGroup execution;
+        synchronized (executionLock) {
+            execution = currentExecution;
+        }
+        if (execution != null) {
+            execution.cancel();
+        }
+    }
+
+    /**
+     * @return true if a refresh is running or waiting for the superseded
+     * refresh to finish
+     */
+    public boolean isRefreshing() {
+        synchronized (executionLock) {
+            return currentExecution != null;
+        }
+    }
+
     private boolean doRefresh(final boolean autoRefresh) {
-        // XXX what if already running! - cancel task
         assert !SwingUtilities.isEventDispatchThread() : "Accessing remote host. Do not call in awt"; // NOI18N
         
         final boolean ret[] = new boolean[1];
-        try(SafeAutoCloseable sac = busy()) {
-            executeQuery(new Runnable() {
-                @Override
-                public void run() {
-                    Redmine.LOG.log(Level.FINE, "refresh start - {0}", name); // NOI18N
-                    try {
-                        if (delegateContainer != null) {
-                            delegateContainer.refreshingStarted();
-                        }
-
-                        delegateContainer.clear();
-                        issues.clear();
-
-                        firstRun = false;
+        final RequestGroup execution = new RequestGroup();
+        RequestGroup superseded;
+        synchronized (executionLock) {
+            superseded = currentExecution;
+            if (autoRefresh && superseded != null) {
+                // The running refresh is current enough
+                return ret[0];
+            }
+            currentExecution = execution;
+        }
+        if (superseded != null) {
+            superseded.cancel();
+        }
+        // Interactive and automatic refreshes run in different request lanes
+        // and may overlap - the result set must only be modified by one
+        synchronized (refreshLock) {
+            try(SafeAutoCloseable sac = busy();
+                SafeAutoCloseable rg = execution.enter()) {
+                if (execution.isCancelled()) {
+                    // Superseded while waiting for the previous refresh
+                    return ret[0];
+                }
+                executeQuery(new Runnable() {
+                    @Override
+                    public void run() {
+                        Redmine.LOG.log(Level.FINE, "refresh start - {0}", name); // NOI18N
                         try {
-                            List<Issue> issueArr = doSearch();
-                            IssueCache issueCache = repository.getIssueCache();
-                            for (Issue issue : issueArr) {
-                                RedmineIssue redmineIssue = issueCache.cachedRedmineIssue(issue);
-                                issues.add(redmineIssue);
-                                if (delegateContainer != null) {
-                                    delegateContainer.add(redmineIssue);
-                                }
-                                fireNotifyData(redmineIssue); // XXX - !!! triggers getIssues()
+                            if (delegateContainer != null) {
+                                delegateContainer.refreshingStarted();
                             }
 
-                        } catch (RedmineException | RuntimeException ex) {
-                            ExceptionHandler.handleException(LOG, "Failed to search", ex);
-                        }
+                            firstRun = false;
+                            localResult = false;
+                            try {
+                                if (autoRefresh && canDeltaRefresh()) {
+                                    deltaRefreshCount++;
+                                    doDeltaRefresh(execution);
+                                } else {
+                                    deltaRefreshCount = 0;
+                                    doFullRefresh(execution);
+                                }
+                            } catch (RedmineException | RuntimeException ex) {
+                                // Force a full refresh on the next run, the state of
+                                // the result set is unknown
+                                updatedOnWatermark = null;
+                                if (execution.isCancelled()) {
+                                    Redmine.LOG.log(Level.FINE, "refresh cancelled - {0}", name); // NOI18N
+                                } else if (ex instanceof RedmineTransportException
+                                        && (localResult || applyLocalResult())) {
+                                    // Offline - the locally evaluated result is shown
+                                    LOG.log(Level.INFO, "Failed to search, showing local result", ex);
+                                } else {
+                                    ExceptionHandler.handleException(LOG, "Failed to search", ex);
+                                }
+                            }
 
-                        if (delegateContainer != null) {
-                            delegateContainer.refreshingFinished();
+                            if (delegateContainer != null) {
+                                delegateContainer.refreshingFinished();
+                            }
+                        } finally {
+                            logQueryEvent(issues.size(), autoRefresh);
+                            Redmine.LOG.log(Level.FINE, "refresh finish - {0}", name); // NOI18N
                         }
-                    } finally {
-                        logQueryEvent(issues.size(), autoRefresh);
-                        Redmine.LOG.log(Level.FINE, "refresh finish - {0}", name); // NOI18N
+                    }
+                });
+            } finally {
+                synchronized (executionLock) {
+                    if (currentExecution == execution) {
+                        currentExecution = null;
                     }
                 }
-            });
+            }
         }
 
         return ret[0];
     }
 
+    private boolean canDeltaRefresh() {
+        return updatedOnWatermark != null
+                && deltaRefreshCount < FULL_REFRESH_INTERVAL;
+    }
+
+    /**
+     * Replace the result set with the complete result of the query.
+     * 
+     * The result set is updated in place, so that issues which are still part
+     * of the result don't vanish from the views while the query runs. Issues
+     * are added as soon as their part of the result is fetched.
+     */
+    private void doFullRefresh(RequestGroup execution) throws RedmineException {
+        updatedOnWatermark = null;
+
+        // The local result is only needed until the first server result for
+        // the current filters is visible, later the server result is shown
+        // until it is replaced
+        if (issues.isEmpty() || filtersChanged) {
+            filtersChanged = false;
+            localResult = applyLocalResult();
+            if (!localResult && issues.isEmpty()) {
+                restoreStoredResult();
+            }
+        }
+
+        // The parts of the result are merged as soon as they arrive, so that
+        // the first issues are visible while the rest is still fetched
+        final IssueCache issueCache = repository.getIssueCache();
+        final Set<RedmineIssue> result = new HashSet<>();
+        List<Issue> issueArr = doSearch(null, new IssueFetchListener() {
+            @Override
+            public void partFetched(List<Issue> part, int fetchedParts, int partCount) {
+                List<RedmineIssue> partIssues = new ArrayList<>(part.size());
+                for (Issue issue : part) {
+                    RedmineIssue redmineIssue = issueCache.updatedRedmineIssue(issue);
+                    partIssues.add(redmineIssue);
+                    result.add(redmineIssue);
+                    if (issues.add(redmineIssue) && delegateContainer != null) {
+                        delegateContainer.add(redmineIssue);
+                    }
+                    fireNotifyData(redmineIssue); // XXX - !!! triggers getIssues()
+                }
+                firePartFetched(partIssues, fetchedParts, partCount);
+            }
+        });
+
+        if (execution.isCancelled()) {
+            // Incomplete result - issues must not be removed
+            updatedOnWatermark = null;
+            return;
+        }
+
+        Iterator<RedmineIssue> it = issues.iterator();
+        while (it.hasNext()) {
+            RedmineIssue redmineIssue = it.next();
+            if (!result.contains(redmineIssue)) {
+                it.remove();
+                if (delegateContainer != null) {
+                    delegateContainer.remove(redmineIssue);
+                }
+            }
+        }
+
+        updatedOnWatermark = maxUpdatedOn(issueArr, null);
+        storeResult();
+    }
+
+    private void storeResult() {
+        if (!isSaved()) {
+            return;
+        }
+        List<Integer> resultIds = new ArrayList<>(issues.size());
+        for (RedmineIssue redmineIssue : issues) {
+            resultIds.add(redmineIssue.getIssue().getId());
+        }
+        repository.getIssueStore().putQueryResult(name, resultIds);
+    }
+
+    /**
+     * Replace the result set with the issues of the issue store, that match
+     * the filters of the query. The local result is visible instantly (also
+     * offline) while the server is queried to refresh the local data.
+     *
+     * Only the candidates of the text index or of the project and status
+     * index of the issue store are evaluated, not every stored issue.
+     *
+     * @return false if the filters can't be evaluated locally
+     */
+    private boolean applyLocalResult() {
+        LocalQueryEvaluator evaluator = new LocalQueryEvaluator(repository, parameters);
+        if (!evaluator.canEvaluate()) {
+            return false;
+        }
+        IssueCache issueCache = repository.getIssueCache();
+        Collection<Integer> candidates = evaluator.getCandidates();
+        if (candidates == null) {
+            candidates = evaluator.getStoreCandidates(repository.getIssueStore());
+        }
+        Set<RedmineIssue> result = new HashSet<>();
+        for (Integer id : candidates) {
+            RedmineIssue redmineIssue = issueCache.getLocal(id);
+            if (redmineIssue != null && redmineIssue.getIssue() != null
+                    && evaluator.matches(redmineIssue.getIssue())) {
+                result.add(redmineIssue);
+            }
+        }
+        Iterator<RedmineIssue> it = issues.iterator();
+        while (it.hasNext()) {
+            RedmineIssue redmineIssue = it.next();
+            if (!result.contains(redmineIssue)) {
+                it.remove();
+                if (delegateContainer != null) {
+                    delegateContainer.remove(redmineIssue);
+                }
+            }
+        }
+        for (RedmineIssue redmineIssue : result) {
+            if (issues.add(redmineIssue) && delegateContainer != null) {
+                delegateContainer.add(redmineIssue);
+            }
+        }
+        fireLocalResultAvailable();
+        return true;
+    }
+
+    /**
+     * Prefill the result set with the last result of the query from the
+     * issue store, so that it is visible while the query is executed.
+     */
+    private void restoreStoredResult() {
+        if (name == null) {
+            return;
+        }
+        List<Integer> storedIds = repository.getIssueStore().getQueryResult(name);
+        if (storedIds == null) {
+            return;
+        }
+        IssueCache issueCache = repository.getIssueCache();
+        for (Integer id : storedIds) {
+            RedmineIssue redmineIssue = issueCache.getLocal(id);
+            if (redmineIssue != null && issues.add(redmineIssue)
+                    && delegateContainer != null) {
+                delegateContainer.add(redmineIssue);
+            }
+        }
+    }
+
+    /**
+     * Merge the issues changed since the last refresh into the result set.
+     * 
+     * Two light requests are issued: one with the query filters to find the
+     * changed issues, that (still) match the query and one only restricted
+     * to the projects of the query to find changed issues, that dropped out
+     * of the result set. Deleted
+     * issues are only noticed by the periodic full refresh.
+     */
+    private void doDeltaRefresh(RequestGroup execution) throws RedmineException {
+        Date since = updatedOnWatermark;
+
+        List<Issue> matching = doSearch(since, null);
+
+        // Only issues of the projects of the query can drop out of the result
+        Map<String, String> changedFilter = new HashMap<>();
+        changedFilter.put("status_id", "*");
+        changedFilter.put("updated_on", ">=" + RedmineUtil.formatTimestamp(since));
+        List<Map<String, String>> changedFilters = new ArrayList<>();
+        List<String> projectIds = getProjectIds();
+        if (projectIds.isEmpty()) {
+            changedFilters.add(changedFilter);
+        } else {
+            for (String projectId : projectIds) {
+                Map<String, String> projectFilter = new HashMap<>(changedFilter);
+                projectFilter.put("project_id", projectId);
+                changedFilters.add(projectFilter);
+            }
+        }
+        List<Issue> changed = repository.getIssues(changedFilters, null, null);
+
+        if (execution.isCancelled()) {
+            return;
+        }
+
+        Set<Integer> matchingIds = new HashSet<>();
+        for (Issue issue : matching) {
+            matchingIds.add(issue.getId());
+        }
+
+        IssueCache issueCache = repository.getIssueCache();
+        for (Issue issue : changed) {
+            if (matchingIds.contains(issue.getId())) {
+                continue;
+            }
+            RedmineIssue redmineIssue = issueCache.getLocal(issue.getId());
+            if (redmineIssue != null && issues.remove(redmineIssue)) {
+                if (delegateContainer != null) {
+                    delegateContainer.remove(redmineIssue);
+                }
+            }
+        }
+
+        for (Issue issue : matching) {
+            RedmineIssue redmineIssue = issueCache.updatedRedmineIssue(issue);
+            if (issues.add(redmineIssue) && delegateContainer != null) {
+                delegateContainer.add(redmineIssue);
+            }
+        }
+
+        for (RedmineIssue redmineIssue : issues) {
+            fireNotifyData(redmineIssue);
+        }
+
+        // The watermark is only derived from server timestamps, the clocks of
+        // client and server are not required to be in sync
+        updatedOnWatermark = maxUpdatedOn(changed, maxUpdatedOn(matching, since));
+        storeResult();
+
+        Redmine.LOG.log(Level.FINE, "delta refresh - {0}: {1} matching, {2} changed", // NOI18N
+                new Object[]{name, matching.size(), changed.size()});
+    }
+
+    /**
+     * @return the ids of the projects the query is restricted to, empty if
+     * the query is not restricted to projects
+     */
+    private List<String> getProjectIds() {
+        List<String> result = new ArrayList<>();
+        ParameterValue[] values = parameters.get("project_id");
+        if (values != null) {
+            for (ParameterValue pv : values) {
+                if (pv != null && StringUtils.isNotBlank(pv.getValue())
+                        && !ParameterValue.NONE_VALUE.equals(pv.getValue())) {
+                    result.add(pv.getValue());
+                }
+            }
+        }
+        return result;
+    }
+
+    private static Date maxUpdatedOn(List<Issue> issueList, Date initial) {
+        Date result = initial;
+        for (Issue issue : issueList) {
+            Date updatedOn = issue.getUpdatedOn();
+            if (updatedOn != null && (result == null || updatedOn.after(result))) {
+                result = updatedOn;
+            }
+        }
+        return result;
+    }
+
     protected void logQueryEvent(int count, boolean autoRefresh) {
         LOG.fine(String.format("Query '%s-%s', Count: %d, Autorefresh: %b",
                 RedmineConnector.NAME,
@@ -247,15 +580,19 @@ public final class RedmineQuery {
      *
      * @see http://www.redmine.org/projects/redmine/wiki/Rest_Issues
      * @see RedmineQueryController#RedmineQueryController
-     * @param searchParameters
+     * @param updatedSince if not null, only issues updated since that point
+     *                     in time are returned
+     * @param listener if not null, receives the (post filtered) parts of the
+     *                 result as soon as they are fetched
      */
-    private List<Issue> doSearch() throws RedmineException {
+    private List<Issue> doSearch(Date updatedSince, final IssueFetchListener listener) throws RedmineException {
         boolean searchDescription = false;
         
         ParameterValue[] queryStringParameter = parameters.get("query");
         String queryStr = ParameterValue.flattenList(queryStringParameter);
 
         Map<String, String> m = new HashMap<>();
+        Set<String> projectIds = new LinkedHashSet<>();
 
         for (Entry<String,ParameterValue[]> p : parameters.entrySet()) {
             String parameter = p.getKey();
@@ -274,7 +611,7 @@ public final class RedmineQuery {
                 } else {
                     boolean isNone = false;
                     for (ParameterValue pv : paramValues) {
-                        if (ParameterValue.NONE_VALUE.equals(pv)) {
+                        if (ParameterValue.NONE_VALUE.equals(pv.getValue())) {
                             isNone = true;
                         }
                     }
@@ -284,8 +621,11 @@ public final class RedmineQuery {
                         m.put(parameter, paramValues[0].getValue());
                     } else if (paramValues.length > 1) {
                         if("project_id".equals(parameter)) {
-                            m.put(parameter, paramValues[0].getValue());
-                            LOG.warning("Redmine currently (2.6.0) does not allow multiple projects for querying - only using first project");
+                            // Redmine (2.6.0) does not allow multiple projects
+                            // for querying - one request per project is issued
+                            for (ParameterValue pv : paramValues) {
+                                projectIds.add(pv.getValue());
+                            }
                         } else {
                             m.put(parameter, ParameterValue.flattenList(paramValues));
                         }
@@ -294,21 +634,65 @@ public final class RedmineQuery {
             }
         }
         
-        // Perform search
-        List<Issue> issueArr = repository.getIssueManager().getIssues(m);
+        if (updatedSince != null) {
+            m.put("updated_on", ">=" + RedmineUtil.formatTimestamp(updatedSince));
+        }
 
+        // Perform search - the current result set is used to split big
+        // results into concurrent requests
+        Collection<Integer> idHint = null;
+        if (updatedSince == null) {
+            idHint = new ArrayList<>(issues.size());
+            for (RedmineIssue redmineIssue : issues) {
+                idHint.add(redmineIssue.getIssue().getId());
+            }
+        }
         // Post filtering: Query string for description
+        final String descriptionFilter;
         if (searchDescription && StringUtils.isNotBlank(queryStr)) {
-            List<Issue> newArr = new ArrayList<>(issueArr.size());
-            for (Issue issue : issueArr) {
-                if (StringUtils.containsIgnoreCase(issue.getDescription(), queryStr)) {
-                    newArr.add(issue);
+            descriptionFilter = queryStr;
+        } else {
+            descriptionFilter = null;
+        }
+
+        IssueFetchListener filteringListener = null;
+        if (listener != null) {
+            filteringListener = new IssueFetchListener() {
+                @Override
+                public void partFetched(List<Issue> part, int fetchedParts, int partCount) {
+                    listener.partFetched(filterDescription(part, descriptionFilter),
+                            fetchedParts, partCount);
                 }
+            };
+        }
+
+        List<Map<String, String>> filters = new ArrayList<>();
+        if (projectIds.isEmpty()) {
+            filters.add(m);
+        } else {
+            for (String projectId : projectIds) {
+                Map<String, String> projectFilter = new HashMap<>(m);
+                projectFilter.put("project_id", projectId);
+                filters.add(projectFilter);
             }
-            issueArr = newArr;
         }
 
-        return issueArr;
+        List<Issue> issueArr = repository.getIssues(filters, idHint, filteringListener);
+
+        return filterDescription(issueArr, descriptionFilter);
+    }
+
+    private static List<Issue> filterDescription(List<Issue> issueArr, String queryStr) {
+        if (queryStr == null) {
+            return issueArr;
+        }
+        List<Issue> newArr = new ArrayList<>(issueArr.size());
+        for (Issue issue : issueArr) {
+            if (StringUtils.containsIgnoreCase(issue.getDescription(), queryStr)) {
+                newArr.add(issue);
+            }
+        }
+        return newArr;
     }
 
     public void remove() {
@@ -366,6 +750,21 @@ public final class RedmineQuery {
         }
     }
 
+    protected void firePartFetched(List<RedmineIssue> partIssues, int fetchedParts, int partCount) {
+        List<RedmineIssue> unmodifiablePart = Collections.unmodifiableList(partIssues);
+        QueryNotifyListener[] listeners = getListeners();
+        for (QueryNotifyListener l : listeners) {
+            l.partFetched(unmodifiablePart, fetchedParts, partCount);
+        }
+    }
+
+    protected void fireLocalResultAvailable() {
+        QueryNotifyListener[] listeners = getListeners();
+        for (QueryNotifyListener l : listeners) {
+            l.localResultAvailable();
+        }
+    }
+
     protected void fireStarted() {
         QueryNotifyListener[] listeners = getListeners();
         for (QueryNotifyListener l : listeners) {
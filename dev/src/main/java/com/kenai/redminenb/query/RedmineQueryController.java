@@ -23,8 +23,11 @@ import com.kenai.redminenb.query.RedmineQueryParameter.CheckBoxParameter;
 import com.kenai.redminenb.query.RedmineQueryParameter.ListParameter;
 import com.kenai.redminenb.query.RedmineQueryParameter.TextFieldParameter;
 import com.kenai.redminenb.repository.RedmineRepository;
+import com.kenai.redminenb.repository.RequestLane;
+import com.kenai.redminenb.repository.UserFetchListener;
 import com.kenai.redminenb.timetracker.IssueTimeTrackerTopComponent;
 import com.kenai.redminenb.user.RedmineUser;
+import com.kenai.redminenb.user.UserIndex;
 import com.kenai.redminenb.util.CancelableRunnable;
 import com.kenai.redminenb.util.NestedProject;
 import com.kenai.redminenb.util.RedmineUtil;
@@ -58,14 +61,17 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.MissingResourceException;
+import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.logging.Level;
@@ -78,6 +84,8 @@ import javax.swing.JTable;
 import javax.swing.RowSorter;
 import javax.swing.SortOrder;
 import javax.swing.SwingUtilities;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 import javax.swing.event.ListSelectionEvent;
 import javax.swing.event.ListSelectionListener;
 import javax.swing.table.DefaultTableColumnModel;
@@ -122,6 +130,10 @@ import org.openide.util.RequestProcessor;
     "LBL_Never=Never",
     "# {0} - the search hits count",
     "LBL_MatchingIssues=There {0,choice,0#are no issues|1#is one issue|1<are {0,number,integer} issues} matching this query.",
+    "# {0} - the number of fetched parts",
+    "# {1} - the number of parts",
+    "# {2} - the search hits count",
+    "LBL_FetchingIssues=Retrieving issues (part {0} of {1}), {2,number,integer} found so far...",
     "LBL_SelectKeywords=Select or deselect keywords.",
     "MNU_OpenIssue=Open Issue",
     "MNU_OpenIssueForTimeTracking=Open Timetracker with Issue"
@@ -129,6 +141,17 @@ import org.openide.util.RequestProcessor;
 public class RedmineQueryController implements QueryController, ActionListener {
 
     private static final Logger LOG = Logger.getLogger(RedmineQueryController.class.getName());
+    /**
+     * Delay between the last edit of the filters and the server request of
+     * the live filter.
+     */
+    private static final int LIVE_SEARCH_DELAY = 750;
+    /**
+     * Delay between the last change of the project selection and the update
+     * of the project dependent filter values.
+     */
+    private static final int PROJECT_UPDATE_DELAY = 300;
+    private static final RequestProcessor LIVE_FILTER_RP = new RequestProcessor("Redmine query live filter", 1); // NOI18N
 
     private RedmineQueryPanel queryPanel;
     private final QueryListModel queryListModel = new QueryListModel();
@@ -151,6 +174,17 @@ public class RedmineQueryController implements QueryController, ActionListener {
     //
     private final Object REFRESH_LOCK = new Object();
     private QueryTask refreshTask;
+    private RequestProcessor.Task projectUpdateTask;
+    // Live filter mode: tasks are null if the mode is disabled
+    private RequestProcessor.Task liveFilterTask;
+    private RequestProcessor.Task liveSearchTask;
+    // Filters edited, but not yet sent to the server - null if the filters
+    // match the query
+    private volatile Map<String, ParameterValue[]> liveParameters;
+    // Last result of the query, base for the live filter
+    private volatile List<RedmineIssue> liveBase = Collections.emptyList();
+    // true if the table shows a narrowed result - EDT only
+    private boolean liveNarrowed;
 
     public RedmineQueryController(RedmineRepository repository, RedmineQuery query) {
         this.repository = repository;
@@ -171,21 +205,123 @@ public class RedmineQueryController implements QueryController, ActionListener {
         queryPanel.refreshConfigurationButton.addActionListener(this);
         queryPanel.issueIdTextField.addActionListener(this);
         queryPanel.queryTextField.addActionListener(this);
+        projectUpdateTask = repository.getRequestProcessor().create(new Runnable() {
+            @Override
+            public void run() {
+                updateProjectValues();
+            }
+        });
         queryPanel.projectList.addListSelectionListener(new ListSelectionListener() {
             @Override
             public void valueChanged(ListSelectionEvent e) {
                 if (!e.getValueIsAdjusting()) {
-                    repository.getRequestProcessor().execute(new Runnable() {
+                    // Quickly changing selections only cause one update
+                    projectUpdateTask.schedule(PROJECT_UPDATE_DELAY);
+                }
+            }
+        });
+        if (RedmineConfig.getInstance().getQueryLiveFilter()) {
+            liveFilterTask = LIVE_FILTER_RP.create(new Runnable() {
+                @Override
+                public void run() {
+                    applyLiveFilter();
+                }
+            });
+            liveSearchTask = LIVE_FILTER_RP.create(new Runnable() {
+                @Override
+                public void run() {
+                    EventQueue.invokeLater(new Runnable() {
                         @Override
                         public void run() {
-                            updateProjectValues();
+                            liveSearch();
                         }
                     });
                 }
+            });
+            ChangeListener filterListener = new ChangeListener() {
+                @Override
+                public void stateChanged(ChangeEvent e) {
+                    onFilterEdited();
+                }
+            };
+            for (RedmineQueryParameter rqp : parameters.values()) {
+                rqp.addChangeListener(filterListener);
+            }
+        }
+    }
+
+    /**
+     * Live filter mode: the result of the query is narrowed locally to the
+     * edited filters at once, the server is queried once the edits settle.
+     */
+    private void onFilterEdited() {
+        assert SwingUtilities.isEventDispatchThread();
+        Map<String, ParameterValue[]> edited = getGuiParameters();
+        if (sameParameters(edited, query.getParameters())) {
+            // Edits reverted or GUI updated from the query
+            liveParameters = null;
+            liveSearchTask.cancel();
+        } else {
+            liveParameters = edited;
+            liveSearchTask.schedule(LIVE_SEARCH_DELAY);
+        }
+        liveFilterTask.schedule(0);
+    }
+
+    /**
+     * Show the issues of the last result matching the edited filters.
+     */
+    private void applyLiveFilter() {
+        final Map<String, ParameterValue[]> filter = liveParameters;
+        final List<RedmineIssue> result;
+        if (filter == null) {
+            result = liveBase;
+        } else {
+            LocalQueryEvaluator evaluator = new LocalQueryEvaluator(repository, filter);
+            if (!evaluator.canEvaluate()) {
+                return;
+            }
+            result = new ArrayList<>();
+            for (RedmineIssue redmineIssue : liveBase) {
+                if (redmineIssue.getIssue() != null && evaluator.matches(redmineIssue.getIssue())) {
+                    result.add(redmineIssue);
+                }
+            }
+        }
+        EventQueue.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                // Skip outdated results, the result of the query is only
+                // restored if it was narrowed
+                if (liveParameters == filter && (filter != null || liveNarrowed)) {
+                    queryListModel.setIssues(result);
+                    liveNarrowed = filter != null;
+                }
             }
         });
     }
 
+    private void liveSearch() {
+        if (liveParameters == null) {
+            return;
+        }
+        guiToModel();
+        liveParameters = null;
+        refresh(false, true);
+    }
+
+    private static boolean sameParameters(Map<String, ParameterValue[]> params1, Map<String, ParameterValue[]> params2) {
+        Set<String> keys = new HashSet<>(params1.keySet());
+        keys.addAll(params2.keySet());
+        for (String key : keys) {
+            if (!ParameterValue.flattenList(params1.get(key)).equals(
+                    ParameterValue.flattenList(params2.get(key)))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private void updateProjectValues() {
         assert (!SwingUtilities.isEventDispatchThread()) : "Must be called off the EDT";
 
@@ -263,12 +399,24 @@ public class RedmineQueryController implements QueryController, ActionListener {
         queryPanel.setLastRefresh(getLastRefresh());
     }
 
-    private void guiToModel() {
-        Map<String, ParameterValue[]> parameters = new HashMap<>();
+    private Map<String, ParameterValue[]> getGuiParameters() {
+        Map<String, ParameterValue[]> result = new HashMap<>();
         for (RedmineQueryParameter rqp : this.parameters.values()) {
-            parameters.put(rqp.getParameter(), rqp.getValues());
+            result.put(rqp.getParameter(), rqp.getValues());
+        }
+        return result;
+    }
+
+    private void guiToModel() {
+        query.setParameters(getGuiParameters());
+        // Remember the selected assignees, so that they are offered before
+        // the project memberships are loaded
+        UserIndex userIndex = repository.getUserIndex();
+        for (ParameterValue pv : assigneeParameter.getValues()) {
+            if (pv.getValue().matches("\\d+")) {
+                userIndex.markUsed(Integer.valueOf(pv.getValue()));
+            }
         }
-        query.setParameters(parameters);
     }
 
     @Override
@@ -443,14 +591,26 @@ public class RedmineQueryController implements QueryController, ActionListener {
     }
 
     private void refresh(final boolean auto) {
+        refresh(auto, false);
+    }
+
+    /**
+     * @param live refresh triggered by the live filter - the current result
+     *             stays visible while the query runs
+     */
+    private void refresh(final boolean auto, final boolean live) {
         RequestProcessor.Task t;
         synchronized (REFRESH_LOCK) {
             if (refreshTask == null) {
                 refreshTask = new QueryTask();
+            } else if (auto && query.isRefreshing()) {
+                // The running refresh is current enough
+                return;
             } else {
+                // The new refresh supersedes the running one
                 refreshTask.cancel();
             }
-            t = refreshTask.post(auto);
+            t = refreshTask.post(auto, live);
         }
     }
 
@@ -524,16 +684,10 @@ public class RedmineQueryController implements QueryController, ActionListener {
                         priorityList.add(new ParameterValue(ip.getName(), ip.getId()));
                     }
 
-                    SortedSet<RedmineUser> userList = new TreeSet<>(RedmineUserComparator.SINGLETON);
-                    for (Entry<Integer, NestedProject> entry : repository.getProjects().entrySet()) {
-                        userList.addAll(repository.getUsers(entry.getValue().getProject()));
-                    }
-
-                    final List<ParameterValue> assigneeList = new ArrayList<>();
-                    assigneeList.add(ParameterValue.NONE_PARAMETERVALUE);
-                    for (RedmineUser redmineUser : userList) {
-                        assigneeList.add(new ParameterValue(redmineUser.getUser().getFullName(), redmineUser.getId()));
-                    }
+                    // The assignees are initialized with the locally known
+                    // users, the memberships are completed in the background
+                    final List<ParameterValue> assigneeList = createAssigneeValues(
+                            repository.getUserIndex().getAll());
 
                     List<NestedProject> projectList = new ArrayList<>(repository.getProjects().values());
                     Collections.sort(projectList);
@@ -575,6 +729,12 @@ public class RedmineQueryController implements QueryController, ActionListener {
                     Redmine.LOG.log(Level.FINE, "Finnished populate query controller (saved: {0}, name: {1})",
                             new Object[]{query.isSaved(), query.getDisplayName()});
                 }
+                repository.getRequestProcessor(RequestLane.BACKGROUND).post(new Runnable() {
+                    @Override
+                    public void run() {
+                        updateAssigneeValues();
+                    }
+                });
             }
         };
 
@@ -582,6 +742,63 @@ public class RedmineQueryController implements QueryController, ActionListener {
         repository.getRequestProcessor().execute(cr);
     }
 
+    private List<ParameterValue> createAssigneeValues(Collection<RedmineUser> users) {
+        SortedSet<RedmineUser> userList = new TreeSet<>(RedmineUserComparator.SINGLETON);
+        userList.addAll(users);
+        List<ParameterValue> assigneeList = new ArrayList<>();
+        assigneeList.add(ParameterValue.NONE_PARAMETERVALUE);
+        for (RedmineUser redmineUser : userList) {
+            assigneeList.add(new ParameterValue(redmineUser.getUser().getFullName(), redmineUser.getId()));
+        }
+        // Keep the assignees of the query selectable, even if they are not
+        // (yet) known
+        ParameterValue[] queryAssignees = query.getParameters().get("assigned_to_id");
+        if (queryAssignees != null) {
+            for (ParameterValue pv : queryAssignees) {
+                if (!assigneeList.contains(pv)) {
+                    assigneeList.add(pv);
+                }
+            }
+        }
+        return assigneeList;
+    }
+
+    /**
+     * Replace the assignee values with the members of all projects, the
+     * members of each project are merged as soon as they arrive. The
+     * selection is kept.
+     */
+    private void updateAssigneeValues() {
+        assert (!SwingUtilities.isEventDispatchThread()) : "Must be called off the EDT";
+
+        List<Project> projects = new ArrayList<>();
+        for (NestedProject np : repository.getProjects().values()) {
+            projects.add(np.getProject());
+        }
+        final Set<RedmineUser> users = new HashSet<>(repository.getUserIndex().getRecent());
+        repository.getUsers(projects, new UserFetchListener() {
+            @Override
+            public void usersFetched(Collection<RedmineUser> fetched) {
+                if (users.addAll(fetched)) {
+                    setAssigneeValues(users);
+                }
+            }
+        });
+    }
+
+    private void setAssigneeValues(Collection<RedmineUser> users) {
+        final List<ParameterValue> assigneeList = createAssigneeValues(users);
+
+        Mutex.EVENT.writeAccess(new Runnable() {
+            @Override
+            public void run() {
+                ParameterValue[] selected = assigneeParameter.getValues();
+                assigneeParameter.setParameterValues(assigneeList);
+                assigneeParameter.setValues(selected);
+            }
+        });
+    }
+
     private <T extends RedmineQueryParameter> T registerQueryParameter(Class<T> clazz, Component c, String parameterName) {
         try {
             Constructor<T> constructor = clazz.getConstructor(c.getClass(), String.class);
@@ -701,8 +918,8 @@ public class RedmineQueryController implements QueryController, ActionListener {
             tcm.addColumn(tce);
 
             issueTable = new JTable();
-            issueTable.setAutoCreateRowSorter(true);
             issueTable.setModel(queryListModel);
+            issueTable.setRowSorter(new QueryTableRowSorter(queryListModel));
             issueTable.setColumnModel(tcm);
             issueTable.getRowSorter().setSortKeys(Collections.singletonList(new RowSorter.SortKey(0, SortOrder.ASCENDING)));
             issueTable.getTableHeader().setReorderingAllowed(false);
@@ -730,7 +947,14 @@ public class RedmineQueryController implements QueryController, ActionListener {
                 @Override
                 public void propertyChange(PropertyChangeEvent evt) {
                     if ("busy".equals(evt.getPropertyName())) {
-                        enableFields(!((boolean) evt.getNewValue()));
+                        boolean busy = (boolean) evt.getNewValue();
+                        if (busy && liveFilterTask != null) {
+                            // The filters stay editable in live filter
+                            // mode, an edit supersedes the running query
+                            queryPanel.enableFields(false);
+                        } else {
+                            enableFields(!busy);
+                        }
                     }
                 }
             });
@@ -800,13 +1024,14 @@ public class RedmineQueryController implements QueryController, ActionListener {
         private RequestProcessor.Task task;
         private int counter;
         private boolean autoRefresh;
+        private boolean liveRefresh;
 
         public QueryTask() {
             query.addNotifyListener(this);
         }
 
         private void startQuery() {
-            if (queryPanel != null) {
+            if (queryPanel != null && !liveRefresh) {
                 EventQueue.invokeLater(new Runnable() {
                     @Override
                     public void run() {
@@ -862,12 +1087,19 @@ public class RedmineQueryController implements QueryController, ActionListener {
             }
         }
 
-        RequestProcessor.Task post(boolean autoRefresh) {
+        RequestProcessor.Task post(boolean autoRefresh, boolean liveRefresh) {
             if (task != null) {
                 task.cancel();
             }
-            task = query.getRepository().getRequestProcessor().create(this);
+            // Automatic refreshes must not block interactive work
+            if (autoRefresh) {
+                task = query.getRepository().getRequestProcessor(RequestLane.BACKGROUND).create(this);
+                task.setPriority(Thread.MIN_PRIORITY);
+            } else {
+                task = query.getRepository().getRequestProcessor().create(this);
+            }
             this.autoRefresh = autoRefresh;
+            this.liveRefresh = liveRefresh;
             task.schedule(0);
             return task;
         }
@@ -876,6 +1108,9 @@ public class RedmineQueryController implements QueryController, ActionListener {
         public boolean cancel() {
             if (task != null) {
                 task.cancel();
+                // Abort the requests in flight, so that the processor is
+                // free for the next query
+                query.cancel();
                 finnishQuery();
             }
             return true;
@@ -897,6 +1132,37 @@ public class RedmineQueryController implements QueryController, ActionListener {
             }
         }
 
+        @Override
+        public void partFetched(final List<RedmineIssue> partIssues, final int fetchedParts, final int partCount) {
+            // Show the issues of the query as soon as they arrive - the model
+            // skips issues of the part, that are already shown
+            final int currentCounter = counter;
+            EventQueue.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    queryListModel.addIssues(partIssues);
+                    if (queryPanel != null && fetchedParts < partCount) {
+                        queryPanel.tableSummaryLabel.setText(
+                                Bundle.LBL_FetchingIssues(fetchedParts, partCount, currentCounter));
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void localResultAvailable() {
+            final List<RedmineIssue> currentIssues = new ArrayList<>(query.getIssues());
+            EventQueue.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    showResult(currentIssues);
+                    if (queryPanel != null && !currentIssues.isEmpty()) {
+                        queryPanel.showNoContentPanel(false);
+                    }
+                }
+            });
+        }
+
         @Override
         public void started() {
             counter = 0;
@@ -907,7 +1173,23 @@ public class RedmineQueryController implements QueryController, ActionListener {
 
         @Override
         public void finished() {
-            queryListModel.setIssues(query.getIssues());
+            final List<RedmineIssue> currentIssues = new ArrayList<>(query.getIssues());
+            EventQueue.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    showResult(currentIssues);
+                }
+            });
+        }
+
+        private void showResult(List<RedmineIssue> currentIssues) {
+            liveBase = Collections.unmodifiableList(currentIssues);
+            queryListModel.setIssues(currentIssues);
+            liveNarrowed = false;
+            if (liveParameters != null) {
+                // The filters were edited while the query ran
+                liveFilterTask.schedule(0);
+            }
         }
     }
 
@@ -16,11 +16,21 @@
 package com.kenai.redminenb.query;
 
 import com.kenai.redminenb.util.ListListModel;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.ItemEvent;
+import java.awt.event.ItemListener;
 import java.util.ArrayList;
 import java.util.Arrays;
 
 import java.util.List;
 import javax.swing.*;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.event.ListSelectionEvent;
+import javax.swing.event.ListSelectionListener;
 
 /**
  * GUI-Bindings for Parameter Values
@@ -50,6 +60,16 @@ public abstract class RedmineQueryParameter {
 
    abstract void setEnabled(boolean b);
 
+   /**
+    * Register a listener, that is notified when the user changes the value
+    * of the parameter.
+    */
+   abstract void addChangeListener(ChangeListener l);
+
+   final void fireChange(ChangeListener l) {
+      l.stateChanged(new ChangeEvent(this));
+   }
+
    void setAlwaysDisabled(boolean bl) {
       this.alwaysDisabled = bl;
       setEnabled(false); // true or false, who cares. this is only to trigger the state change
@@ -101,6 +121,16 @@ public abstract class RedmineQueryParameter {
          combo.setEnabled(alwaysDisabled ? false : b);
       }
 
+      @Override
+      void addChangeListener(final ChangeListener l) {
+         combo.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+               fireChange(l);
+            }
+         });
+      }
+
       @Override
       public boolean isEmpty() {
          return combo.getModel().getSize() == 0;
@@ -165,6 +195,18 @@ public abstract class RedmineQueryParameter {
          list.setEnabled(alwaysDisabled ? false : b);
       }
 
+      @Override
+      void addChangeListener(final ChangeListener l) {
+         list.addListSelectionListener(new ListSelectionListener() {
+            @Override
+            public void valueChanged(ListSelectionEvent e) {
+               if (!e.getValueIsAdjusting()) {
+                  fireChange(l);
+               }
+            }
+         });
+      }
+
       @Override
       public boolean isEmpty() {
          return list.getModel().getSize() == 0;
@@ -212,6 +254,26 @@ public abstract class RedmineQueryParameter {
          txt.setEnabled(alwaysDisabled ? false : b);
       }
 
+      @Override
+      void addChangeListener(final ChangeListener l) {
+         txt.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+               fireChange(l);
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+               fireChange(l);
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+               fireChange(l);
+            }
+         });
+      }
+
       @Override
       public boolean isEmpty() {
          return false;
@@ -248,6 +310,16 @@ public abstract class RedmineQueryParameter {
          chk.setEnabled(alwaysDisabled ? false : b);
       }
 
+      @Override
+      void addChangeListener(final ChangeListener l) {
+         chk.addItemListener(new ItemListener() {
+            @Override
+            public void itemStateChanged(ItemEvent e) {
+               fireChange(l);
+            }
+         });
+      }
+
       @Override
       public boolean isEmpty() {
          return false;
@@ -292,6 +364,11 @@ public abstract class RedmineQueryParameter {
          // interested
       }
 
+      @Override
+      void addChangeListener(ChangeListener l) {
+         // not editable by the user
+      }
+
       @Override
       public boolean isEmpty() {
          return values == null || values.length == 0;
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2015 Matthias Bläsing.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kenai.redminenb.repository;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.http.conn.ClientConnectionRequest;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ManagedClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+
+/**
+ * Connection manager, that allows to abort the request a thread executes.
+ *
+ * The redmine-java-api creates the HTTP requests internally, so they can't
+ * be aborted directly. Instead the connection leased by a thread is
+ * recorded and closed on abort - the blocked request fails with an
+ * IOException. Requests of a cancelled {@link RequestGroup} are aborted
+ * before they are sent.
+ *
+ * @author matthias
+ */
+class AbortableConnectionManager extends PoolingClientConnectionManager {
+    private static final Logger LOG = Logger.getLogger(AbortableConnectionManager.class.getName());
+    // Connections currently leased, by leasing thread - shared by all
+    // managers, a thread only executes one request at a time
+    private static final Map<Thread, ManagedClientConnection> leased = new HashMap<>();
+
+    AbortableConnectionManager(SchemeRegistry schemeRegistry) {
+        super(schemeRegistry);
+    }
+
+    /**
+     * Abort the request the thread currently executes (if any).
+     */
+    static void abortRequest(Thread thread) {
+        ManagedClientConnection connection;
+        synchronized (leased) {
+            connection = leased.get(thread);
+        }
+        if (connection != null) {
+            try {
+                connection.abortConnection();
+            } catch (IOException ex) {
+                LOG.log(Level.FINE, "Failed to abort connection", ex);
+            }
+        }
+    }
+
+    @Override
+    public ClientConnectionRequest requestConnection(HttpRoute route, Object state) {
+        final ClientConnectionRequest request = super.requestConnection(route, state);
+        return new ClientConnectionRequest() {
+            @Override
+            public ManagedClientConnection getConnection(long timeout, TimeUnit tunit)
+                    throws InterruptedException, ConnectionPoolTimeoutException {
+                ManagedClientConnection connection = request.getConnection(timeout, tunit);
+                RequestGroup group = RequestGroup.current();
+                if (group != null && group.isCancelled()) {
+                    try {
+                        connection.abortConnection();
+                    } catch (IOException ex) {
+                        LOG.log(Level.FINE, "Failed to abort connection", ex);
+                    }
+                    throw new InterruptedException("Request cancelled"); // NOI18N
+                }
+                synchronized (leased) {
+                    leased.put(Thread.currentThread(), connection);
+                }
+                return connection;
+            }
+
+            @Override
+            public void abortRequest() {
+                request.abortRequest();
+            }
+        };
+    }
+
+    @Override
+    public void releaseConnection(ManagedClientConnection conn, long keepalive, TimeUnit tunit) {
+        // Aborted connections are released by the aborting thread
+        synchronized (leased) {
+            leased.values().remove(conn);
+        }
+        super.releaseConnection(conn, keepalive, tunit);
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2015 Matthias Bläsing.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kenai.redminenb.repository;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Lookup of the entries of cached metadata lists by id.
+ *
+ * The metadata caches replace a list instance when it is reloaded, so the
+ * index of a list is rebuilt when a different instance is passed in - it
+ * never needs to be invalidated explicitly. Lists scoped to a project are
+ * indexed separately per scope.
+ *
+ * @param <T> entry type
+ * @author matthias
+ */
+abstract class IdIndex<T> {
+    private static class Index<T> {
+        private final Collection<? extends T> source;
+        private final Map<Integer, T> byId;
+
+        public Index(Collection<? extends T> source, Map<Integer, T> byId) {
+            this.source = source;
+            this.byId = byId;
+        }
+    }
+
+    private final Map<Object, Index<T>> indexes = new HashMap<>();
+
+    protected abstract Integer getId(T entry);
+
+    T get(Collection<? extends T> entries, Integer id) {
+        return get(null, entries, id);
+    }
+
+    /**
+     * @param scope scope of the list (for example the project id), null for
+     *              repository wide lists
+     * @param entries current list of the scope
+     * @return the first entry with the supplied id, null if not found
+     */
+    synchronized T get(Object scope, Collection<? extends T> entries, Integer id) {
+        if (entries == null || id == null) {
+            return null;
+        }
+        Index<T> index = indexes.get(scope);
+        if (index == null || index.source != entries) {
+            Map<Integer, T> byId = new HashMap<>(entries.size() * 2);
+            for (T entry : entries) {
+                Integer entryId = getId(entry);
+                if (!byId.containsKey(entryId)) {
+                    byId.put(entryId, entry);
+                }
+            }
+            index = new Index<T>(entries, byId);
+            indexes.put(scope, index);
+        }
+        return index.byId.get(id);
+    }
+}
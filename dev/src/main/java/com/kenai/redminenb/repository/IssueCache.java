@@ -19,7 +19,11 @@ package com.kenai.redminenb.repository;
 import com.kenai.redminenb.issue.RedmineIssue;
 import com.taskadapter.redmineapi.bean.Issue;
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -31,11 +35,18 @@ import java.util.Map;
  * parallel from the same backend data they will get the same RedmineIssue
  * instance.
  * 
+ * Issues not held in memory are restored from the persistent issue store of
+ * the repository (see {@link IssueStore}).
+ * 
+ * The beans referenced by the issue data passing the cache are shared
+ * between the issues (see {@link IssueInterner}).
+ * 
  * @author matthias
  */
 public class IssueCache {
     private RedmineRepository repository;
     private final Map<String,WeakReference<RedmineIssue>> cache = new HashMap<>();
+    private final IssueInterner interner = new IssueInterner();
 
     public IssueCache(RedmineRepository repository) {
         this.repository = repository;
@@ -66,6 +77,59 @@ public class IssueCache {
      * @return 
      */
     public RedmineIssue get(String id) {
+        RedmineIssue cached = getCached(id);
+        if(cached != null) {
+            return cached;
+        } else {
+            return restore(id, true);
+        }
+    }
+    
+    /**
+     * Access RedmineIssue by ID from memory or from the persistent issue
+     * store - in contrast to {@link #get(java.lang.String)} an issue restored
+     * from the issue store is not revalidated against the server.
+     * 
+     * @param id
+     * @return 
+     */
+    public RedmineIssue getLocal(Integer id) {
+        if(id == null) {
+            return null;
+        }
+        RedmineIssue cached = getCached(id.toString());
+        if(cached != null) {
+            return cached;
+        } else {
+            return restore(id.toString(), false);
+        }
+    }
+    
+    /**
+     * Same as {@link #getLocal(java.lang.Integer)}, issues restored from the
+     * persistent issue store are added to restored, so that the caller can
+     * revalidate them together.
+     * 
+     * @param id
+     * @param restored receives the restored issues
+     * @return 
+     */
+    RedmineIssue getLocal(Integer id, Collection<RedmineIssue> restored) {
+        if(id == null) {
+            return null;
+        }
+        RedmineIssue cached = getCached(id.toString());
+        if(cached != null) {
+            return cached;
+        }
+        RedmineIssue ri = restore(id.toString(), false);
+        if(ri != null) {
+            restored.add(ri);
+        }
+        return ri;
+    }
+    
+    private RedmineIssue getCached(String id) {
         WeakReference<RedmineIssue> valueReference = cache.get(id);
         if(valueReference == null) {
             return null;
@@ -74,6 +138,28 @@ public class IssueCache {
         }
     }
     
+    private synchronized RedmineIssue restore(String id, boolean revalidate) {
+        RedmineIssue cached = getCached(id);
+        if(cached != null) {
+            return cached;
+        }
+        Issue stored;
+        try {
+            stored = repository.getIssueStore().get(Integer.valueOf(id));
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+        if(stored == null) {
+            return null;
+        }
+        RedmineIssue ri = new RedmineIssue(repository, interner.intern(stored));
+        put(ri);
+        if(revalidate) {
+            repository.scheduleRevalidation(ri);
+        }
+        return ri;
+    }
+    
     /**
      * Place a RedmineIssue into the issue cache.
      * 
@@ -97,13 +183,62 @@ public class IssueCache {
      * @return 
      */
     public synchronized RedmineIssue cachedRedmineIssue(Issue issue) {
-        RedmineIssue cached = get(issue.getId());
+        RedmineIssue cached = getCached(String.valueOf(issue.getId()));
         if(cached != null) {
             return cached;
         } else {
-            RedmineIssue ri = new RedmineIssue(repository, issue);
+            RedmineIssue ri = new RedmineIssue(repository, interner.intern(issue));
             put(ri);
             return ri;
         }
     }
+    
+    /**
+     * Bulk version of cachedRedmineIssue.
+     * 
+     * @param issues backend issue data
+     * @return the RedmineIssues in the order of the supplied issue data
+     */
+    public synchronized List<RedmineIssue> cachedRedmineIssues(Collection<Issue> issues) {
+        List<RedmineIssue> result = new ArrayList<>(issues.size());
+        for (Issue issue : issues) {
+            result.add(cachedRedmineIssue(issue));
+        }
+        return result;
+    }
+    
+    /**
+     * Same as cachedRedmineIssue, but if a RedmineIssue is already associated
+     * with the supplied issue data and the supplied data is newer than the
+     * cached data, the RedmineIssue is updated with the supplied data.
+     * 
+     * The supplied data is expected to be list data (without journals,
+     * attachments, watchers, relations and changesets) - these are kept
+     * from the cached data until the issue is refreshed completely (see
+     * {@link RedmineIssue#isJournalsLoaded()}).
+     * 
+     * @param issue backend issue data
+     * @return 
+     */
+    public synchronized RedmineIssue updatedRedmineIssue(Issue issue) {
+        RedmineIssue cached = getCached(String.valueOf(issue.getId()));
+        if (cached == null) {
+            return cachedRedmineIssue(issue);
+        }
+        Date cachedUpdate = cached.getIssue() == null ? null : cached.getIssue().getUpdatedOn();
+        if (issue.getUpdatedOn() != null
+                && (cachedUpdate == null || issue.getUpdatedOn().after(cachedUpdate))) {
+            Issue header = interner.intern(issue);
+            Issue current = cached.getIssue();
+            if (current != null) {
+                header.addJournals(current.getJournals());
+                header.addAttachments(current.getAttachments());
+                header.addWatchers(current.getWatchers());
+                header.addRelations(current.getRelations());
+                header.addChangesets(current.getChangesets());
+            }
+            cached.setIssue(header);
+        }
+        return cached;
+    }
 }
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2015 Matthias Bläsing.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kenai.redminenb.repository;
+
+import com.taskadapter.redmineapi.bean.Issue;
+import java.util.List;
+
+/**
+ * Receives the parts of an issue list request as soon as they are fetched.
+ *
+ * The listener is invoked from the thread, that issued the request.
+ *
+ * @author matthias
+ */
+public interface IssueFetchListener {
+
+    /**
+     * @param issues the issues of the fetched part
+     * @param fetchedParts number of parts fetched so far (including this one)
+     * @param partCount total number of parts of the request
+     */
+    public void partFetched(List<Issue> issues, int fetchedParts, int partCount);
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2015 Matthias Bläsing.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kenai.redminenb.repository;
+
+import com.taskadapter.redmineapi.bean.Issue;
+import com.taskadapter.redmineapi.bean.IssueCategory;
+import com.taskadapter.redmineapi.bean.Project;
+import com.taskadapter.redmineapi.bean.Tracker;
+import com.taskadapter.redmineapi.bean.User;
+import com.taskadapter.redmineapi.bean.Version;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Share the beans referenced by issue data between issues.
+ *
+ * The issue data parsed by the redmine-java-api holds its own tracker,
+ * project, user, version and category beans and its own status and priority
+ * strings. Big query results hold thousands of identical copies. The
+ * interner replaces them by one shared instance per id (and name).
+ *
+ * The shared beans must not be modified - the issue data is modified by
+ * replacing the referenced beans.
+ *
+ * @author matthias
+ */
+class IssueInterner {
+
+    private abstract static class Table<T> {
+        private final Map<Integer, T> entries = new HashMap<>();
+
+        protected abstract Integer getId(T entry);
+
+        protected abstract String getName(T entry);
+
+        T intern(T entry) {
+            if (entry == null || getId(entry) == null) {
+                return entry;
+            }
+            T known = entries.get(getId(entry));
+            if (known != null && Objects.equals(getName(known), getName(entry))) {
+                return known;
+            }
+            // Unknown or renamed - the new instance becomes the shared one
+            entries.put(getId(entry), entry);
+            return entry;
+        }
+    }
+
+    private final Table<Tracker> trackers = new Table<Tracker>() {
+        @Override
+        protected Integer getId(Tracker entry) {
+            return entry.getId();
+        }
+
+        @Override
+        protected String getName(Tracker entry) {
+            return entry.getName();
+        }
+    };
+    private final Table<Project> projects = new Table<Project>() {
+        @Override
+        protected Integer getId(Project entry) {
+            return entry.getId();
+        }
+
+        @Override
+        protected String getName(Project entry) {
+            return entry.getName();
+        }
+    };
+    private final Table<User> users = new Table<User>() {
+        @Override
+        protected Integer getId(User entry) {
+            return entry.getId();
+        }
+
+        @Override
+        protected String getName(User entry) {
+            return entry.getFullName();
+        }
+    };
+    private final Table<Version> versions = new Table<Version>() {
+        @Override
+        protected Integer getId(Version entry) {
+            return entry.getId();
+        }
+
+        @Override
+        protected String getName(Version entry) {
+            return entry.getName();
+        }
+    };
+    private final Table<IssueCategory> categories = new Table<IssueCategory>() {
+        @Override
+        protected Integer getId(IssueCategory entry) {
+            return entry.getId();
+        }
+
+        @Override
+        protected String getName(IssueCategory entry) {
+            return entry.getName();
+        }
+    };
+    private final Map<String, String> strings = new HashMap<>();
+
+    /**
+     * Replace the beans referenced by issue by the shared instances.
+     */
+    synchronized Issue intern(Issue issue) {
+        if (issue == null) {
+            return null;
+        }
+        issue.setTracker(trackers.intern(issue.getTracker()));
+        issue.setProject(projects.intern(issue.getProject()));
+        issue.setAssignee(users.intern(issue.getAssignee()));
+        issue.setAuthor(users.intern(issue.getAuthor()));
+        issue.setTargetVersion(versions.intern(issue.getTargetVersion()));
+        issue.setCategory(categories.intern(issue.getCategory()));
+        issue.setStatusName(intern(issue.getStatusName()));
+        issue.setPriorityText(intern(issue.getPriorityText()));
+        return issue;
+    }
+
+    private String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+        String known = strings.get(value);
+        if (known == null) {
+            strings.put(value, value);
+            return value;
+        }
+        return known;
+    }
+}
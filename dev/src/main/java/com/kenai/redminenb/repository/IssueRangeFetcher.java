@@ -0,0 +1,240 @@
+/*
+ * Copyright 2015 Matthias Bläsing.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kenai.redminenb.repository;
+
+import com.kenai.redminenb.util.SafeAutoCloseable;
+import com.taskadapter.redmineapi.IssueManager;
+import com.taskadapter.redmineapi.RedmineException;
+import com.taskadapter.redmineapi.bean.Issue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Fetch the result of an issue list request with multiple concurrent requests.
+ *
+ * The redmine-java-api pages through the result internally and neither
+ * exposes the total_count of the result nor allows to request a specific
+ * page. So instead of splitting by offset, the result is split by disjoint
+ * issue id ranges. The boundaries are chosen, so that each range holds
+ * about the same number of issues of a previous result of the request
+ * (the id hint). Issues outside the hint are still found, as the outer
+ * ranges are open ended.
+ *
+ * The union of multiple requests (for example one per project) is fetched
+ * the same way, all parts of all requests are fetched concurrently.
+ *
+ * The parts are reported to an optional listener as soon as they are fetched,
+ * the complete result is reassembled in descending id order (the default
+ * sort order of redmine).
+ *
+ * @author matthias
+ */
+class IssueRangeFetcher {
+    private static final Logger LOG = Logger.getLogger(IssueRangeFetcher.class.getName());
+    /**
+     * Upper bound for the number of ranges the requests of a fetch are split
+     * into.
+     */
+    private static final int MAX_RANGES = 16;
+    private static final String ISSUE_ID = "issue_id"; // NOI18N
+
+    private final RedmineRepository repository;
+    private final int pageSize;
+
+    IssueRangeFetcher(RedmineRepository repository, int pageSize) {
+        this.repository = repository;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * @param filter parameters of the issue list request
+     * @param idHint ids of a previous result of the request, may be null
+     * @param listener receives the parts of the result in the order they
+     *                 are fetched, may be null
+     * @return the issues matching filter
+     */
+    List<Issue> getIssues(Map<String, String> filter, Collection<Integer> idHint,
+            IssueFetchListener listener) throws RedmineException {
+        return getIssues(Collections.singletonList(filter), idHint, listener);
+    }
+
+    /**
+     * Fetch the union of the results of multiple issue list requests (for
+     * example one per project). All requests are issued concurrently, an
+     * issue matching multiple requests is only reported and returned once.
+     *
+     * @param filters parameters of the issue list requests
+     * @param idHint ids of a previous result of the requests, may be null
+     * @param listener receives the parts of the result in the order they
+     *                 are fetched, may be null
+     * @return the issues matching one of the filters
+     */
+    List<Issue> getIssues(List<Map<String, String>> filters, Collection<Integer> idHint,
+            IssueFetchListener listener) throws RedmineException {
+        List<String> ranges = null;
+        if (idHint != null && !filters.get(0).containsKey(ISSUE_ID)) {
+            // The requests together must not exceed the range limit
+            ranges = createRanges(idHint, Math.max(1, MAX_RANGES / filters.size()));
+        }
+
+        final IssueManager issueManager = repository.getIssueManager();
+
+        if (ranges == null && filters.size() == 1) {
+            List<Issue> result = issueManager.getIssues(filters.get(0));
+            if (listener != null) {
+                listener.partFetched(result, 1, 1);
+            }
+            return result;
+        }
+
+        List<Map<String, String>> partFilters = new ArrayList<>();
+        for (Map<String, String> filter : filters) {
+            if (ranges == null) {
+                partFilters.add(filter);
+            } else {
+                for (String range : ranges) {
+                    Map<String, String> rangeFilter = new HashMap<>(filter);
+                    rangeFilter.put(ISSUE_ID, range);
+                    partFilters.add(rangeFilter);
+                }
+            }
+        }
+
+        LOG.log(Level.FINE, "Fetching issues in {0} parts", partFilters.size()); // NOI18N
+
+        // The concurrency is bounded by the throughput of the bulk lane
+        CompletionService<List<Issue>> completionService = new ExecutorCompletionService<>(
+                repository.getRequestProcessor(RequestLane.BULK));
+        // The parts are cancelled together with the issuing work
+        final RequestGroup group = RequestGroup.current();
+        Map<Future<List<Issue>>, Integer> partIndex = new HashMap<>();
+        for (final Map<String, String> partFilter : partFilters) {
+            Future<List<Issue>> part = completionService.submit(new Callable<List<Issue>>() {
+                @Override
+                public List<Issue> call() throws Exception {
+                    if (group == null) {
+                        return issueManager.getIssues(partFilter);
+                    }
+                    try (SafeAutoCloseable sac = group.enter()) {
+                        return issueManager.getIssues(partFilter);
+                    }
+                }
+            });
+            partIndex.put(part, partIndex.size());
+        }
+
+        List<List<Issue>> parts = new ArrayList<>(Collections.nCopies(partFilters.size(), (List<Issue>) null));
+        Set<Integer> fetchedIds = new HashSet<>();
+        try {
+            for (int fetched = 1; fetched <= partFilters.size(); fetched++) {
+                Future<List<Issue>> part = completionService.take();
+                // Issues matching multiple requests are only kept once
+                List<Issue> partResult = new ArrayList<>();
+                for (Issue issue : part.get()) {
+                    if (fetchedIds.add(issue.getId())) {
+                        partResult.add(issue);
+                    }
+                }
+                parts.set(partIndex.get(part), partResult);
+                if (listener != null) {
+                    listener.partFetched(partResult, fetched, partFilters.size());
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RedmineException("Interrupted while fetching issues", ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RedmineException) {
+                throw (RedmineException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else {
+                throw new RedmineException(cause);
+            }
+        } finally {
+            // Parts, that were not started yet, are skipped
+            for (Future<List<Issue>> part : partIndex.keySet()) {
+                part.cancel(false);
+            }
+        }
+
+        List<Issue> result = new ArrayList<>();
+        for (List<Issue> part : parts) {
+            result.addAll(part);
+        }
+        if (filters.size() > 1) {
+            // The results of the requests are interleaved
+            Collections.sort(result, new Comparator<Issue>() {
+                @Override
+                public int compare(Issue o1, Issue o2) {
+                    return o2.getId().compareTo(o1.getId());
+                }
+            });
+        }
+        return result;
+    }
+
+    /**
+     * Split the id space into ranges holding about one or more pages of the
+     * hinted ids each.
+     *
+     * @return issue_id filter values in descending id order, null if the
+     * request should not be split
+     */
+    private List<String> createRanges(Collection<Integer> idHint, int maxRanges) {
+        Set<Integer> uniqueIds = new TreeSet<>();
+        for (Integer id : idHint) {
+            if (id != null) {
+                uniqueIds.add(id);
+            }
+        }
+        List<Integer> ids = new ArrayList<>(uniqueIds);
+        int rangeCount = Math.min(maxRanges, (ids.size() + pageSize - 1) / pageSize);
+        if (rangeCount < 2) {
+            return null;
+        }
+
+        int[] lowerBounds = new int[rangeCount];
+        for (int i = 1; i < rangeCount; i++) {
+            lowerBounds[i] = ids.get((int) ((long) i * ids.size() / rangeCount));
+        }
+
+        List<String> ranges = new ArrayList<>(rangeCount);
+        ranges.add(">=" + lowerBounds[rangeCount - 1]);
+        for (int i = rangeCount - 2; i > 0; i--) {
+            ranges.add("><" + lowerBounds[i] + "|" + (lowerBounds[i + 1] - 1));
+        }
+        ranges.add("<=" + (lowerBounds[1] - 1));
+        return ranges;
+    }
+}
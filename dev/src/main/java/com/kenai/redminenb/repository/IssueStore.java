@@ -0,0 +1,690 @@
+/*
+ * Copyright 2015 Matthias Bläsing.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kenai.redminenb.repository;
+
+import static com.kenai.redminenb.util.StreamUtil.*;
+import com.taskadapter.redmineapi.bean.CustomField;
+import com.taskadapter.redmineapi.bean.CustomFieldFactory;
+import com.taskadapter.redmineapi.bean.Issue;
+import com.taskadapter.redmineapi.bean.IssueCategory;
+import com.taskadapter.redmineapi.bean.IssueCategoryFactory;
+import com.taskadapter.redmineapi.bean.IssueFactory;
+import com.taskadapter.redmineapi.bean.Project;
+import com.taskadapter.redmineapi.bean.ProjectFactory;
+import com.taskadapter.redmineapi.bean.TrackerFactory;
+import com.taskadapter.redmineapi.bean.User;
+import com.taskadapter.redmineapi.bean.UserFactory;
+import com.taskadapter.redmineapi.bean.Version;
+import com.taskadapter.redmineapi.bean.VersionFactory;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.openide.util.RequestProcessor;
+
+/**
+ * Persistent store for the issue data of one repository.
+ *
+ * The store holds the issue header data (no journals, attachments or
+ * watchers), keyed by issue id and only replaced by data with a newer
+ * updated_on timestamp. Additionally the ids of the last result of
+ * each saved query are kept.
+ *
+ * Issues are held serialized in memory, so every get returns a private copy
+ * and later modifications of the returned or stored issues don't leak into
+ * the store. The store is bounded: if more than {@value #MAX_ISSUES} issues
+ * are stored, the least recently used ones are dropped - data derived from
+ * the store can follow with an {@link EvictionListener}.
+ *
+ * The ids of the stored issues are additionally indexed by project and
+ * status, so that filters over the whole store (see
+ * {@link #getIds(java.util.Collection, java.util.Collection)}) don't need to
+ * decode every issue.
+ *
+ * Modifications are written to disk delayed and coalesced. The file is
+ * written from a snapshot, so readers are not blocked by the write.
+ *
+ * @author matthias
+ */
+public class IssueStore {
+    private static final Logger LOG = Logger.getLogger(IssueStore.class.getName());
+    private static final int MAGIC = 0x524E4249; // RNBI
+    private static final int VERSION = 2;
+    // Version 1 lacks the project and status ids of the records
+    private static final int VERSION_1 = 1;
+    private static final int FLUSH_DELAY = 5000;
+    private static final int MAX_ISSUES = 20000;
+    private static final RequestProcessor RP = new RequestProcessor("Redmine issue store", 1); // NOI18N
+    private static final List<WeakReference<IssueStore>> stores = new LinkedList<>();
+
+    /**
+     * Receives the ids of the issues dropped from the store because of its
+     * size bound. Called asynchronously, outside the lock of the store.
+     */
+    public interface EvictionListener {
+        void evicted(Collection<Integer> ids);
+    }
+
+    private final File file;
+    private final RequestProcessor.Task flushTask;
+    private final RequestProcessor.Task evictionTask;
+    private final List<EvictionListener> evictionListeners = new CopyOnWriteArrayList<>();
+    // Evicted ids not yet passed to the listeners
+    private final List<Integer> pendingEvictions = new ArrayList<>();
+    // Serializes the writes of the file
+    private final Object writeLock = new Object();
+    private Map<Integer, Record> issues;
+    private Map<String, List<Integer>> queryResults;
+    // issue ids by project id/status id - the issues without project or
+    // status are found under the null key
+    private final Map<Integer, Set<Integer>> idsByProject = new HashMap<>();
+    private final Map<Integer, Set<Integer>> idsByStatus = new HashMap<>();
+    private boolean dirty;
+
+    private static class Record {
+        private final Long updatedOn;
+        private final Integer projectId;
+        private final Integer statusId;
+        private final byte[] data;
+
+        public Record(Long updatedOn, Integer projectId, Integer statusId, byte[] data) {
+            this.updatedOn = updatedOn;
+            this.projectId = projectId;
+            this.statusId = statusId;
+            this.data = data;
+        }
+    }
+
+    public IssueStore(File file) {
+        this.file = file;
+        this.flushTask = RP.create(new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        });
+        this.evictionTask = RP.create(new Runnable() {
+            @Override
+            public void run() {
+                fireEvicted();
+            }
+        });
+        synchronized (stores) {
+            stores.add(new WeakReference<>(this));
+        }
+    }
+
+    public void addEvictionListener(EvictionListener listener) {
+        evictionListeners.add(listener);
+    }
+
+    public void removeEvictionListener(EvictionListener listener) {
+        evictionListeners.remove(listener);
+    }
+
+    private void fireEvicted() {
+        List<Integer> evicted;
+        synchronized (this) {
+            evicted = new ArrayList<>(pendingEvictions);
+            pendingEvictions.clear();
+        }
+        if (evicted.isEmpty()) {
+            return;
+        }
+        for (EvictionListener listener : evictionListeners) {
+            listener.evicted(evicted);
+        }
+    }
+
+    /**
+     * Write all pending modifications of all stores to disk.
+     */
+    public static void flushAll() {
+        List<IssueStore> toFlush = new ArrayList<>();
+        synchronized (stores) {
+            Iterator<WeakReference<IssueStore>> it = stores.iterator();
+            while (it.hasNext()) {
+                IssueStore store = it.next().get();
+                if (store == null) {
+                    it.remove();
+                } else {
+                    toFlush.add(store);
+                }
+            }
+        }
+        for (IssueStore store : toFlush) {
+            store.flush();
+        }
+    }
+
+    /**
+     * @param id
+     * @return a copy of the stored issue data or null if the issue is unknown
+     */
+    public synchronized Issue get(Integer id) {
+        if (id == null) {
+            return null;
+        }
+        Record record = getIssues().get(id);
+        if (record == null) {
+            return null;
+        }
+        try {
+            return decode(record.data);
+        } catch (IOException | RuntimeException ex) {
+            LOG.log(Level.INFO, "Failed to read stored issue " + id, ex);
+            // Write the removal, so the record is not read again after a
+            // restart
+            removeRecord(id);
+            markDirty();
+            return null;
+        }
+    }
+
+    /**
+     * Get the serialized data of the stored issues in one pass - in contrast
+     * to {@link #get(java.lang.Integer)} this doesn't count as use of the
+     * issues. The data has to be decoded with {@link #decode(byte[])}.
+     *
+     * @param ids the ids of the wanted issues
+     * @return serialized issue data by id, unknown issues are missing
+     */
+    synchronized Map<Integer, byte[]> getSerialized(Collection<Integer> ids) {
+        Set<Integer> wanted = new HashSet<>(ids);
+        Map<Integer, byte[]> result = new HashMap<>();
+        // Iterating doesn't change the access order
+        for (Map.Entry<Integer, Record> entry : getIssues().entrySet()) {
+            if (wanted.contains(entry.getKey())) {
+                result.put(entry.getKey(), entry.getValue().data);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the issue decoded from data returned by getSerialized
+     */
+    static Issue decode(byte[] data) throws IOException {
+        return readIssue(new DataInputStream(new ByteArrayInputStream(data)));
+    }
+
+    /**
+     * @return true if the issue is stored
+     */
+    public synchronized boolean contains(Integer id) {
+        return getIssues().containsKey(id);
+    }
+
+    /**
+     * @return the ids of all stored issues
+     */
+    public synchronized List<Integer> getIds() {
+        return new ArrayList<>(getIssues().keySet());
+    }
+
+    /**
+     * @return the updated_on timestamp of the stored issue or null if the
+     * issue is not stored or has no timestamp
+     */
+    public synchronized Long getUpdatedOn(Integer id) {
+        Record record = getIssues().get(id);
+        return record == null ? null : record.updatedOn;
+    }
+
+    /**
+     * Store issue data - the data is only stored, if it is newer than the
+     * already stored data.
+     */
+    public synchronized void put(Issue issue) {
+        if (issue == null || issue.getId() == null || issue.getId() == 0) {
+            return;
+        }
+        Long updatedOn = issue.getUpdatedOn() == null ? null : issue.getUpdatedOn().getTime();
+        Record existing = getIssues().get(issue.getId());
+        if (existing != null && existing.updatedOn != null
+                && (updatedOn == null || updatedOn <= existing.updatedOn)) {
+            // Same or older revision of the issue
+            return;
+        }
+        try {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            DataOutputStream dos = new DataOutputStream(baos);
+            writeIssue(dos, issue);
+            dos.close();
+            putRecord(issue.getId(), new Record(updatedOn,
+                    issue.getProject() == null ? null : issue.getProject().getId(),
+                    issue.getStatusId(), baos.toByteArray()));
+            markDirty();
+        } catch (IOException ex) {
+            LOG.log(Level.INFO, "Failed to store issue " + issue.getId(), ex);
+        }
+    }
+
+    public synchronized void remove(Integer id) {
+        if (removeRecord(id)) {
+            markDirty();
+        }
+    }
+
+    /**
+     * @return ids of the last result of the named query, null if unknown
+     */
+    public synchronized List<Integer> getQueryResult(String queryName) {
+        getIssues();
+        List<Integer> result = queryResults.get(queryName);
+        return result == null ? null : Collections.unmodifiableList(result);
+    }
+
+    public synchronized void putQueryResult(String queryName, Collection<Integer> ids) {
+        if (queryName == null) {
+            return;
+        }
+        getIssues();
+        queryResults.put(queryName, new ArrayList<>(ids));
+        markDirty();
+    }
+
+    public synchronized void removeQueryResult(String queryName) {
+        getIssues();
+        if (queryResults.remove(queryName) != null) {
+            markDirty();
+        }
+    }
+
+    /**
+     * @param projectIds if not null, only issues of these projects are
+     *                   returned (subprojects are not included)
+     * @param statusIds  if not null, only issues with these status are
+     *                   returned, null as id selects the issues without status
+     * @return the ids of the stored issues matching the restrictions
+     */
+    public synchronized Set<Integer> getIds(Collection<Integer> projectIds, Collection<Integer> statusIds) {
+        getIssues();
+        Set<Integer> result = projectIds == null ? null : collectIds(idsByProject, projectIds);
+        if (statusIds != null) {
+            Set<Integer> byStatus = collectIds(idsByStatus, statusIds);
+            if (result == null) {
+                result = byStatus;
+            } else {
+                result.retainAll(byStatus);
+            }
+        }
+        return result == null ? new HashSet<>(issues.keySet()) : result;
+    }
+
+    private static Set<Integer> collectIds(Map<Integer, Set<Integer>> idIndex, Collection<Integer> keys) {
+        Set<Integer> result = new HashSet<>();
+        for (Integer key : keys) {
+            Set<Integer> ids = idIndex.get(key);
+            if (ids != null) {
+                result.addAll(ids);
+            }
+        }
+        return result;
+    }
+
+    private void putRecord(Integer id, Record record) {
+        Record old = getIssues().put(id, record);
+        if (old != null) {
+            unindexRecord(id, old);
+        }
+        indexRecord(id, record);
+    }
+
+    private boolean removeRecord(Integer id) {
+        Record old = getIssues().remove(id);
+        if (old != null) {
+            unindexRecord(id, old);
+            return true;
+        }
+        return false;
+    }
+
+    private void indexRecord(Integer id, Record record) {
+        addId(idsByProject, record.projectId, id);
+        addId(idsByStatus, record.statusId, id);
+    }
+
+    private void unindexRecord(Integer id, Record record) {
+        removeId(idsByProject, record.projectId, id);
+        removeId(idsByStatus, record.statusId, id);
+    }
+
+    private static void addId(Map<Integer, Set<Integer>> idIndex, Integer key, Integer id) {
+        Set<Integer> ids = idIndex.get(key);
+        if (ids == null) {
+            ids = new HashSet<>();
+            idIndex.put(key, ids);
+        }
+        ids.add(id);
+    }
+
+    private static void removeId(Map<Integer, Set<Integer>> idIndex, Integer key, Integer id) {
+        Set<Integer> ids = idIndex.get(key);
+        if (ids != null) {
+            ids.remove(id);
+            if (ids.isEmpty()) {
+                idIndex.remove(key);
+            }
+        }
+    }
+
+    private void markDirty() {
+        dirty = true;
+        flushTask.schedule(FLUSH_DELAY);
+    }
+
+    private Map<Integer, Record> getIssues() {
+        if (issues == null) {
+            // Access ordered, so that the least recently used issues are
+            // dropped
+            issues = new LinkedHashMap<Integer, Record>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, Record> eldest) {
+                    if (size() > MAX_ISSUES) {
+                        unindexRecord(eldest.getKey(), eldest.getValue());
+                        pendingEvictions.add(eldest.getKey());
+                        evictionTask.schedule(0);
+                        return true;
+                    }
+                    return false;
+                }
+            };
+            queryResults = new HashMap<>();
+            load();
+        }
+        return issues;
+    }
+
+    private void load() {
+        if (!file.canRead()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            int version = in.readInt() == MAGIC ? in.readInt() : -1;
+            if (version != VERSION && version != VERSION_1) {
+                LOG.log(Level.FINE, "Ignoring issue store with unknown format: {0}", file); // NOI18N
+                return;
+            }
+            int issueCount = in.readInt();
+            for (int i = 0; i < issueCount; i++) {
+                int id = in.readInt();
+                Long updatedOn = in.readBoolean() ? in.readLong() : null;
+                Integer projectId = null;
+                Integer statusId = null;
+                if (version != VERSION_1) {
+                    projectId = readInteger(in);
+                    statusId = readInteger(in);
+                }
+                byte[] data = new byte[readLength(in, 1)];
+                in.readFully(data);
+                if (version == VERSION_1) {
+                    // Take the ids from the issue data, written in the
+                    // current format on the next flush
+                    Issue issue = decode(data);
+                    projectId = issue.getProject() == null ? null : issue.getProject().getId();
+                    statusId = issue.getStatusId();
+                    dirty = true;
+                }
+                putRecord(id, new Record(updatedOn, projectId, statusId, data));
+            }
+            int queryCount = in.readInt();
+            for (int i = 0; i < queryCount; i++) {
+                String name = readString(in);
+                int idCount = readLength(in, 4);
+                List<Integer> ids = new ArrayList<>(idCount);
+                for (int j = 0; j < idCount; j++) {
+                    ids.add(in.readInt());
+                }
+                queryResults.put(name, ids);
+            }
+        } catch (IOException | RuntimeException ex) {
+            // Corrupt data can also surface as RuntimeException
+            LOG.log(Level.INFO, "Failed to read issue store " + file, ex);
+            issues.clear();
+            idsByProject.clear();
+            idsByStatus.clear();
+            queryResults.clear();
+        }
+    }
+
+    /**
+     * Write pending modifications to disk.
+     */
+    public void flush() {
+        synchronized (writeLock) {
+            Map<Integer, Record> issuesSnapshot;
+            Map<String, List<Integer>> queryResultsSnapshot;
+            synchronized (this) {
+                if (!dirty) {
+                    return;
+                }
+                // Records and query results are not modified after creation,
+                // a shallow copy is a consistent snapshot
+                issuesSnapshot = new LinkedHashMap<>(issues);
+                queryResultsSnapshot = new HashMap<>(queryResults);
+                dirty = false;
+            }
+            if (!write(issuesSnapshot, queryResultsSnapshot)) {
+                synchronized (this) {
+                    dirty = true;
+                }
+            }
+        }
+    }
+
+    private boolean write(Map<Integer, Record> issuesSnapshot, Map<String, List<Integer>> queryResultsSnapshot) {
+        file.getParentFile().mkdirs();
+        File tempFile = new File(file.getParentFile(), file.getName() + ".tmp"); // NOI18N
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                // Written in access order, so the order survives a restart
+                out.writeInt(issuesSnapshot.size());
+                for (Map.Entry<Integer, Record> entry : issuesSnapshot.entrySet()) {
+                    out.writeInt(entry.getKey());
+                    Long updatedOn = entry.getValue().updatedOn;
+                    out.writeBoolean(updatedOn != null);
+                    if (updatedOn != null) {
+                        out.writeLong(updatedOn);
+                    }
+                    writeInteger(out, entry.getValue().projectId);
+                    writeInteger(out, entry.getValue().statusId);
+                    out.writeInt(entry.getValue().data.length);
+                    out.write(entry.getValue().data);
+                }
+                out.writeInt(queryResultsSnapshot.size());
+                for (Map.Entry<String, List<Integer>> entry : queryResultsSnapshot.entrySet()) {
+                    writeString(out, entry.getKey());
+                    out.writeInt(entry.getValue().size());
+                    for (Integer id : entry.getValue()) {
+                        out.writeInt(id);
+                    }
+                }
+            }
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            return true;
+        } catch (IOException ex) {
+            LOG.log(Level.INFO, "Failed to write issue store " + file, ex);
+            if (!tempFile.delete()) {
+                tempFile.deleteOnExit();
+            }
+            return false;
+        }
+    }
+
+    static void writeIssue(DataOutputStream out, Issue issue) throws IOException {
+        out.writeInt(issue.getId());
+        writeString(out, issue.getSubject());
+        writeString(out, issue.getDescription());
+        writeInteger(out, issue.getParentId());
+        writeFloat(out, issue.getEstimatedHours());
+        writeFloat(out, issue.getSpentHours());
+        writeInteger(out, issue.getPriorityId());
+        writeString(out, issue.getPriorityText());
+        writeInteger(out, issue.getDoneRatio());
+        writeInteger(out, issue.getStatusId());
+        writeString(out, issue.getStatusName());
+        writeDate(out, issue.getStartDate());
+        writeDate(out, issue.getDueDate());
+        writeDate(out, issue.getCreatedOn());
+        writeDate(out, issue.getUpdatedOn());
+        writeUser(out, issue.getAssignee());
+        writeUser(out, issue.getAuthor());
+        Project project = issue.getProject();
+        out.writeBoolean(project != null);
+        if (project != null) {
+            out.writeInt(project.getId());
+            writeString(out, project.getName());
+            writeString(out, project.getIdentifier());
+        }
+        out.writeBoolean(issue.getTracker() != null);
+        if (issue.getTracker() != null) {
+            out.writeInt(issue.getTracker().getId());
+            writeString(out, issue.getTracker().getName());
+        }
+        Version version = issue.getTargetVersion();
+        out.writeBoolean(version != null);
+        if (version != null) {
+            out.writeInt(version.getId());
+            writeString(out, version.getName());
+        }
+        IssueCategory category = issue.getCategory();
+        out.writeBoolean(category != null);
+        if (category != null) {
+            out.writeInt(category.getId());
+            writeString(out, category.getName());
+        }
+        out.writeInt(issue.getCustomFields().size());
+        for (CustomField cf : issue.getCustomFields()) {
+            out.writeInt(cf.getId());
+            writeString(out, cf.getName());
+            out.writeBoolean(cf.isMultiple());
+            if (cf.isMultiple()) {
+                List<String> values = cf.getValues();
+                out.writeInt(values == null ? 0 : values.size());
+                if (values != null) {
+                    for (String value : values) {
+                        writeString(out, value);
+                    }
+                }
+            } else {
+                writeString(out, cf.getValue());
+            }
+        }
+    }
+
+    static Issue readIssue(DataInputStream in) throws IOException {
+        Issue issue = IssueFactory.create(in.readInt());
+        issue.setSubject(readString(in));
+        issue.setDescription(readString(in));
+        issue.setParentId(readInteger(in));
+        issue.setEstimatedHours(readFloat(in));
+        issue.setSpentHours(readFloat(in));
+        issue.setPriorityId(readInteger(in));
+        issue.setPriorityText(readString(in));
+        issue.setDoneRatio(readInteger(in));
+        issue.setStatusId(readInteger(in));
+        issue.setStatusName(readString(in));
+        issue.setStartDate(readDate(in));
+        issue.setDueDate(readDate(in));
+        issue.setCreatedOn(readDate(in));
+        issue.setUpdatedOn(readDate(in));
+        issue.setAssignee(readUser(in));
+        issue.setAuthor(readUser(in));
+        if (in.readBoolean()) {
+            Project project = ProjectFactory.create(in.readInt());
+            project.setName(readString(in));
+            project.setIdentifier(readString(in));
+            issue.setProject(project);
+        }
+        if (in.readBoolean()) {
+            int trackerId = in.readInt();
+            issue.setTracker(TrackerFactory.create(trackerId, readString(in)));
+        }
+        if (in.readBoolean()) {
+            Version version = VersionFactory.create(in.readInt());
+            version.setName(readString(in));
+            issue.setTargetVersion(version);
+        }
+        if (in.readBoolean()) {
+            IssueCategory category = IssueCategoryFactory.create(in.readInt());
+            category.setName(readString(in));
+            issue.setCategory(category);
+        }
+        int customFieldCount = in.readInt();
+        for (int i = 0; i < customFieldCount; i++) {
+            int cfId = in.readInt();
+            String cfName = readString(in);
+            if (in.readBoolean()) {
+                int valueCount = readLength(in, 4);
+                List<String> values = new ArrayList<>(valueCount);
+                for (int j = 0; j < valueCount; j++) {
+                    values.add(readString(in));
+                }
+                CustomField cf = CustomFieldFactory.create(cfId);
+                cf.setName(cfName);
+                cf.setValues(values);
+                issue.addCustomField(cf);
+            } else {
+                issue.addCustomField(CustomFieldFactory.create(cfId, cfName, readString(in)));
+            }
+        }
+        return issue;
+    }
+
+    private static void writeUser(DataOutputStream out, User user) throws IOException {
+        out.writeBoolean(user != null);
+        if (user != null) {
+            writeInteger(out, user.getId());
+            writeString(out, user.getFullName());
+        }
+    }
+
+    private static User readUser(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        User user = UserFactory.create(readInteger(in));
+        user.setFullName(readString(in));
+        return user;
+    }
+}
@@ -0,0 +1,551 @@
+/*
+ * Copyright 2015 Matthias Bläsing.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kenai.redminenb.repository;
+
+import static com.kenai.redminenb.util.StreamUtil.*;
+import com.taskadapter.redmineapi.bean.Issue;
+import com.taskadapter.redmineapi.bean.Journal;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.openide.util.RequestProcessor;
+
+/**
+ * Persistent inverted index over the texts of the issues of one repository.
+ *
+ * The subject, the description and the journal notes of each issue are
+ * split into lower case tokens (runs of letters and digits). For each field
+ * the index maps the tokens to the ids of the issues containing them.
+ *
+ * Searches match substrings: every token of the searched text has to be
+ * contained in a token of the field. The result is a superset of the issues
+ * containing the searched text as a substring, so callers, that need exact
+ * substring semantics, verify the candidates against the issue data.
+ *
+ * The tokens containing a searched token are found through a table of the
+ * n-grams (up to {@value #GRAM_LENGTH} characters) of the indexed tokens,
+ * so a lookup doesn't scan the whole vocabulary.
+ *
+ * The subject and description of an issue are reindexed when a newer
+ * revision is indexed, the journal notes only when issue data including
+ * journals is indexed. Modifications are written to disk delayed and
+ * coalesced, the file is written from a snapshot, so searches and updates
+ * are not blocked by the write.
+ *
+ * @author matthias
+ */
+public class IssueTextIndex {
+    private static final Logger LOG = Logger.getLogger(IssueTextIndex.class.getName());
+    private static final int MAGIC = 0x524E4254; // RNBT
+    private static final int VERSION = 1;
+    private static final int FLUSH_DELAY = 5000;
+    private static final int GRAM_LENGTH = 3;
+    private static final int ADD_BATCH_SIZE = 200;
+    private static final RequestProcessor RP = new RequestProcessor("Redmine issue text index", 1); // NOI18N
+    private static final List<WeakReference<IssueTextIndex>> indexes = new LinkedList<>();
+
+    public enum Field {
+        SUBJECT,
+        DESCRIPTION,
+        JOURNALS
+    }
+
+    private static class Document {
+        private final Long updatedOn;
+        // tokens of the fields, indexed by Field ordinal
+        private final String[][] tokens;
+
+        public Document(Long updatedOn, String[][] tokens) {
+            this.updatedOn = updatedOn;
+            this.tokens = tokens;
+        }
+    }
+
+    private final File file;
+    private final RequestProcessor.Task flushTask;
+    // Serializes the writes of the file
+    private final Object writeLock = new Object();
+    private Map<Integer, Document> documents;
+    // token to issue ids, indexed by Field ordinal
+    private List<Map<String, Set<Integer>>> postings;
+    // n-gram to the tokens containing it, indexed by Field ordinal
+    private List<Map<String, Set<String>>> grams;
+    private boolean dirty;
+
+    public IssueTextIndex(File file) {
+        this.file = file;
+        this.flushTask = RP.create(new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        });
+        synchronized (indexes) {
+            indexes.add(new WeakReference<>(this));
+        }
+    }
+
+    /**
+     * Write all pending modifications of all indexes to disk.
+     */
+    public static void flushAll() {
+        List<IssueTextIndex> toFlush = new ArrayList<>();
+        synchronized (indexes) {
+            Iterator<WeakReference<IssueTextIndex>> it = indexes.iterator();
+            while (it.hasNext()) {
+                IssueTextIndex index = it.next().get();
+                if (index == null) {
+                    it.remove();
+                } else {
+                    toFlush.add(index);
+                }
+            }
+        }
+        for (IssueTextIndex index : toFlush) {
+            index.flush();
+        }
+    }
+
+    /**
+     * @return true if the issue is part of the index
+     */
+    public synchronized boolean contains(Integer id) {
+        return getDocuments().containsKey(id);
+    }
+
+    /**
+     * Index the issue data - subject and description are only indexed if
+     * the data is newer than the indexed data, the journal notes only if
+     * the data holds journals.
+     */
+    public synchronized void update(Issue issue) {
+        if (issue == null || issue.getId() == null || issue.getId() == 0) {
+            return;
+        }
+        Long updatedOn = issue.getUpdatedOn() == null ? null : issue.getUpdatedOn().getTime();
+        Document existing = getDocuments().get(issue.getId());
+        boolean newer = existing == null || existing.updatedOn == null
+                || (updatedOn != null && updatedOn > existing.updatedOn);
+        boolean hasJournals = issue.getJournals() != null && !issue.getJournals().isEmpty();
+        if (!newer && !hasJournals) {
+            return;
+        }
+        String[][] tokens = new String[Field.values().length][];
+        if (newer) {
+            tokens[Field.SUBJECT.ordinal()] = tokenize(issue.getSubject());
+            tokens[Field.DESCRIPTION.ordinal()] = tokenize(issue.getDescription());
+        } else {
+            tokens[Field.SUBJECT.ordinal()] = existing.tokens[Field.SUBJECT.ordinal()];
+            tokens[Field.DESCRIPTION.ordinal()] = existing.tokens[Field.DESCRIPTION.ordinal()];
+        }
+        if (hasJournals) {
+            StringBuilder notes = new StringBuilder();
+            for (Journal journal : issue.getJournals()) {
+                if (journal.getNotes() != null) {
+                    notes.append(journal.getNotes()).append('\n');
+                }
+            }
+            tokens[Field.JOURNALS.ordinal()] = tokenize(notes.toString());
+        } else {
+            tokens[Field.JOURNALS.ordinal()] = existing == null
+                    ? new String[0]
+                    : existing.tokens[Field.JOURNALS.ordinal()];
+        }
+        if (existing != null) {
+            removePostings(issue.getId(), existing);
+        }
+        Document document = new Document(newer ? updatedOn : existing.updatedOn, tokens);
+        getDocuments().put(issue.getId(), document);
+        addPostings(issue.getId(), document);
+        markDirty();
+    }
+
+    public synchronized void remove(Integer id) {
+        Document existing = getDocuments().remove(id);
+        if (existing != null) {
+            removePostings(id, existing);
+            markDirty();
+        }
+    }
+
+    /**
+     * @param text searched text
+     * @param fields fields to search in
+     * @return the ids of the issues, that may contain the text in one of
+     * the fields, null if the text holds no token (the index can't be used)
+     */
+    public synchronized Set<Integer> search(String text, Set<Field> fields) {
+        String[] queryTokens = tokenize(text);
+        if (queryTokens.length == 0) {
+            return null;
+        }
+        getDocuments();
+        Set<Integer> result = new HashSet<>();
+        for (Field field : fields) {
+            Map<String, Set<Integer>> fieldPostings = postings.get(field.ordinal());
+            Set<Integer> fieldResult = null;
+            for (String queryToken : queryTokens) {
+                Set<Integer> tokenResult = new HashSet<>();
+                for (String token : findTokens(field, queryToken)) {
+                    tokenResult.addAll(fieldPostings.get(token));
+                }
+                if (fieldResult == null) {
+                    fieldResult = tokenResult;
+                } else {
+                    fieldResult.retainAll(tokenResult);
+                }
+                if (fieldResult.isEmpty()) {
+                    break;
+                }
+            }
+            result.addAll(fieldResult);
+        }
+        return result;
+    }
+
+    public Set<Integer> search(String text, Field field) {
+        return search(text, EnumSet.of(field));
+    }
+
+    /**
+     * @return the indexed tokens of the field containing the query token
+     */
+    private Set<String> findTokens(Field field, String queryToken) {
+        Map<String, Set<String>> fieldGrams = grams.get(field.ordinal());
+        if (queryToken.length() <= GRAM_LENGTH) {
+            Set<String> tokens = fieldGrams.get(queryToken);
+            return tokens == null ? Collections.<String>emptySet() : tokens;
+        }
+        // Only tokens containing all n-grams of the query token can contain
+        // it - verify the tokens of the rarest n-gram
+        Set<String> rarest = null;
+        for (int i = 0; i + GRAM_LENGTH <= queryToken.length(); i++) {
+            Set<String> tokens = fieldGrams.get(queryToken.substring(i, i + GRAM_LENGTH));
+            if (tokens == null) {
+                return Collections.emptySet();
+            }
+            if (rarest == null || tokens.size() < rarest.size()) {
+                rarest = tokens;
+            }
+        }
+        Set<String> result = new HashSet<>();
+        for (String token : rarest) {
+            if (token.contains(queryToken)) {
+                result.add(token);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the distinct n-grams (up to GRAM_LENGTH characters) of the token
+     */
+    private static Set<String> getGrams(String token) {
+        Set<String> result = new HashSet<>();
+        for (int i = 0; i < token.length(); i++) {
+            for (int end = i + 1; end <= Math.min(i + GRAM_LENGTH, token.length()); end++) {
+                result.add(token.substring(i, end));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the distinct lower case tokens of the text
+     */
+    static String[] tokenize(String text) {
+        if (text == null || text.isEmpty()) {
+            return new String[0];
+        }
+        Set<String> tokens = new LinkedHashSet<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean tokenChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (tokenChar && start < 0) {
+                start = i;
+            } else if (!tokenChar && start >= 0) {
+                tokens.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return tokens.toArray(new String[tokens.size()]);
+    }
+
+    private void addPostings(Integer id, Document document) {
+        for (Field field : Field.values()) {
+            Map<String, Set<Integer>> fieldPostings = postings.get(field.ordinal());
+            Map<String, Set<String>> fieldGrams = grams.get(field.ordinal());
+            for (String token : document.tokens[field.ordinal()]) {
+                Set<Integer> ids = fieldPostings.get(token);
+                if (ids == null) {
+                    ids = new HashSet<>();
+                    fieldPostings.put(token, ids);
+                    for (String gram : getGrams(token)) {
+                        Set<String> tokens = fieldGrams.get(gram);
+                        if (tokens == null) {
+                            tokens = new HashSet<>();
+                            fieldGrams.put(gram, tokens);
+                        }
+                        tokens.add(token);
+                    }
+                }
+                ids.add(id);
+            }
+        }
+    }
+
+    private void removePostings(Integer id, Document document) {
+        for (Field field : Field.values()) {
+            Map<String, Set<Integer>> fieldPostings = postings.get(field.ordinal());
+            Map<String, Set<String>> fieldGrams = grams.get(field.ordinal());
+            for (String token : document.tokens[field.ordinal()]) {
+                Set<Integer> ids = fieldPostings.get(token);
+                if (ids != null) {
+                    ids.remove(id);
+                    if (ids.isEmpty()) {
+                        fieldPostings.remove(token);
+                        for (String gram : getGrams(token)) {
+                            Set<String> tokens = fieldGrams.get(gram);
+                            if (tokens != null) {
+                                tokens.remove(token);
+                                if (tokens.isEmpty()) {
+                                    fieldGrams.remove(gram);
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private void markDirty() {
+        dirty = true;
+        flushTask.schedule(FLUSH_DELAY);
+    }
+
+    private Map<Integer, Document> getDocuments() {
+        if (documents == null) {
+            documents = new HashMap<>();
+            postings = new ArrayList<>(Field.values().length);
+            grams = new ArrayList<>(Field.values().length);
+            for (Field field : Field.values()) {
+                postings.add(new HashMap<String, Set<Integer>>());
+                grams.add(new HashMap<String, Set<String>>());
+            }
+            load();
+        }
+        return documents;
+    }
+
+    /**
+     * Only the documents are stored, the postings and n-grams are rebuilt on
+     * load.
+     */
+    private void load() {
+        if (!file.canRead()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                LOG.log(Level.FINE, "Ignoring issue text index with unknown format: {0}", file); // NOI18N
+                return;
+            }
+            int documentCount = in.readInt();
+            for (int i = 0; i < documentCount; i++) {
+                int id = in.readInt();
+                Long updatedOn = in.readBoolean() ? in.readLong() : null;
+                String[][] tokens = new String[Field.values().length][];
+                for (int field = 0; field < tokens.length; field++) {
+                    tokens[field] = new String[in.readInt()];
+                    for (int j = 0; j < tokens[field].length; j++) {
+                        tokens[field][j] = readString(in);
+                    }
+                }
+                documents.put(id, new Document(updatedOn, tokens));
+            }
+        } catch (IOException ex) {
+            LOG.log(Level.INFO, "Failed to read issue text index " + file, ex);
+            documents.clear();
+        }
+        for (Map.Entry<Integer, Document> entry : documents.entrySet()) {
+            addPostings(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Write pending modifications to disk.
+     */
+    public void flush() {
+        synchronized (writeLock) {
+            Map<Integer, Document> snapshot;
+            synchronized (this) {
+                if (!dirty) {
+                    return;
+                }
+                // Documents are not modified after creation, a shallow copy
+                // is a consistent snapshot
+                snapshot = new HashMap<>(documents);
+                dirty = false;
+            }
+            if (!write(snapshot)) {
+                synchronized (this) {
+                    dirty = true;
+                }
+            }
+        }
+    }
+
+    private boolean write(Map<Integer, Document> snapshot) {
+        file.getParentFile().mkdirs();
+        File tempFile = new File(file.getParentFile(), file.getName() + ".tmp"); // NOI18N
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(snapshot.size());
+                for (Map.Entry<Integer, Document> entry : snapshot.entrySet()) {
+                    out.writeInt(entry.getKey());
+                    Long updatedOn = entry.getValue().updatedOn;
+                    out.writeBoolean(updatedOn != null);
+                    if (updatedOn != null) {
+                        out.writeLong(updatedOn);
+                    }
+                    for (String[] fieldTokens : entry.getValue().tokens) {
+                        out.writeInt(fieldTokens.length);
+                        for (String token : fieldTokens) {
+                            writeString(out, token);
+                        }
+                    }
+                }
+            }
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            return true;
+        } catch (IOException ex) {
+            LOG.log(Level.INFO, "Failed to write issue text index " + file, ex);
+            if (!tempFile.delete()) {
+                tempFile.deleteOnExit();
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Remove the issues not part of the collection from the index.
+     */
+    synchronized void retainAll(Collection<Integer> ids) {
+        Set<Integer> retained = new HashSet<>(ids);
+        boolean removed = false;
+        Iterator<Map.Entry<Integer, Document>> it = getDocuments().entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Integer, Document> entry = it.next();
+            if (!retained.contains(entry.getKey())) {
+                it.remove();
+                removePostings(entry.getKey(), entry.getValue());
+                removed = true;
+            }
+        }
+        if (removed) {
+            markDirty();
+        }
+    }
+
+    /**
+     * Index the issues of the collection, that are not yet indexed.
+     *
+     * The issue data is read from the store in one pass and decoded and
+     * tokenized outside the lock of the index. The documents are added in
+     * batches, so that searches and updates are not blocked for long.
+     */
+    void addMissing(IssueStore issueStore, Collection<Integer> ids) {
+        List<Integer> missing = new ArrayList<>();
+        synchronized (this) {
+            Map<Integer, Document> known = getDocuments();
+            for (Integer id : ids) {
+                if (!known.containsKey(id)) {
+                    missing.add(id);
+                }
+            }
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+        Map<Integer, Document> batch = new HashMap<>();
+        for (Map.Entry<Integer, byte[]> entry : issueStore.getSerialized(missing).entrySet()) {
+            Issue issue;
+            try {
+                issue = IssueStore.decode(entry.getValue());
+            } catch (IOException | RuntimeException ex) {
+                LOG.log(Level.FINE, "Failed to read stored issue " + entry.getKey(), ex);
+                continue;
+            }
+            String[][] tokens = new String[Field.values().length][];
+            tokens[Field.SUBJECT.ordinal()] = tokenize(issue.getSubject());
+            tokens[Field.DESCRIPTION.ordinal()] = tokenize(issue.getDescription());
+            // The store holds no journals
+            tokens[Field.JOURNALS.ordinal()] = new String[0];
+            Long updatedOn = issue.getUpdatedOn() == null ? null : issue.getUpdatedOn().getTime();
+            batch.put(entry.getKey(), new Document(updatedOn, tokens));
+            if (batch.size() >= ADD_BATCH_SIZE) {
+                addDocuments(batch);
+                batch.clear();
+            }
+        }
+        addDocuments(batch);
+    }
+
+    /**
+     * Add the documents of issues, that are not yet indexed - issues indexed
+     * concurrently are skipped.
+     */
+    private synchronized void addDocuments(Map<Integer, Document> batch) {
+        boolean added = false;
+        for (Map.Entry<Integer, Document> entry : batch.entrySet()) {
+            if (!getDocuments().containsKey(entry.getKey())) {
+                getDocuments().put(entry.getKey(), entry.getValue());
+                addPostings(entry.getKey(), entry.getValue());
+                added = true;
+            }
+        }
+        if (added) {
+            markDirty();
+        }
+    }
+}
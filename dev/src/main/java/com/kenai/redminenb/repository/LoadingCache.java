@@ -0,0 +1,226 @@
+/*
+ * Copyright 2015 Matthias Bläsing.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kenai.redminenb.repository;
+
+import com.taskadapter.redmineapi.RedmineException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Cache for values loaded from the server.
+ *
+ * Concurrent callers requesting the same key share one load: the first
+ * caller runs the loader, the others wait for its result. Failed loads are
+ * not cached, the next caller triggers a new load.
+ *
+ * Values older than the time to live are still returned, but trigger a
+ * reload on the supplied executor. The stale value is replaced when the
+ * reload succeeds, so callers only block for the initial load of a key.
+ *
+ * Caches holding a single value use the methods without key.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ * @author matthias
+ */
+class LoadingCache<K, V> {
+    private static final Logger LOG = Logger.getLogger(LoadingCache.class.getName());
+
+    interface Loader<K, V> {
+        V load(K key) throws RedmineException;
+    }
+
+    private static final Object NULL_KEY = new Object();
+
+    private static class Entry<V> {
+        private final Future<V> value;
+        private final long loadedAt;
+        private final AtomicBoolean revalidating = new AtomicBoolean();
+
+        public Entry(Future<V> value, long loadedAt) {
+            this.value = value;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    private final ConcurrentMap<Object, Entry<V>> entries = new ConcurrentHashMap<>();
+    private final Loader<K, V> loader;
+    private final long timeToLive;
+    private final Executor revalidationExecutor;
+
+    /**
+     * @param loader loads the values
+     * @param timeToLive time in ms after which a value is reloaded, values
+     *                   never expire if less or equal to zero
+     * @param revalidationExecutor executor for reloads of expired values
+     */
+    LoadingCache(Loader<K, V> loader, long timeToLive, Executor revalidationExecutor) {
+        this.loader = loader;
+        this.timeToLive = timeToLive;
+        this.revalidationExecutor = revalidationExecutor;
+    }
+
+    V get() throws RedmineException {
+        return get(null);
+    }
+
+    /**
+     * @return the cached value, if not present it is loaded
+     */
+    V get(final K key) throws RedmineException {
+        Object mapKey = key == null ? NULL_KEY : key;
+        Entry<V> entry = entries.get(mapKey);
+        if (entry == null) {
+            FutureTask<V> task = new FutureTask<>(new Callable<V>() {
+                @Override
+                public V call() throws Exception {
+                    return loader.load(key);
+                }
+            });
+            Entry<V> newEntry = new Entry<V>(task, System.currentTimeMillis());
+            entry = entries.putIfAbsent(mapKey, newEntry);
+            if (entry == null) {
+                entry = newEntry;
+                task.run();
+            }
+        } else if (isExpired(entry) && entry.value.isDone()) {
+            revalidate(mapKey, key, entry);
+        }
+        try {
+            return entry.value.get();
+        } catch (ExecutionException ex) {
+            entries.remove(mapKey, entry);
+            Throwable cause = ex.getCause();
+            if (cause instanceof RedmineException) {
+                throw (RedmineException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else {
+                throw new RedmineException(cause);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RedmineException("Interrupted while waiting for server data", ex);
+        }
+    }
+
+    private boolean isExpired(Entry<V> entry) {
+        return timeToLive > 0
+                && System.currentTimeMillis() - entry.loadedAt > timeToLive;
+    }
+
+    private void revalidate(final Object mapKey, final K key, final Entry<V> staleEntry) {
+        if (!staleEntry.revalidating.compareAndSet(false, true)) {
+            return;
+        }
+        revalidationExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Entry<V> freshEntry;
+                try {
+                    freshEntry = new Entry<>(completed(loader.load(key)), System.currentTimeMillis());
+                } catch (RedmineException | RuntimeException ex) {
+                    // Keep serving the stale value and retry after the time to live
+                    LOG.log(Level.FINE, "Failed to revalidate cached value", ex);
+                    freshEntry = new Entry<>(staleEntry.value, System.currentTimeMillis());
+                }
+                entries.replace(mapKey, staleEntry, freshEntry);
+            }
+        });
+    }
+
+    private static <V> Future<V> completed(final V value) {
+        FutureTask<V> task = new FutureTask<>(new Callable<V>() {
+            @Override
+            public V call() {
+                return value;
+            }
+        });
+        task.run();
+        return task;
+    }
+
+    /**
+     * Add a value from an earlier session. The value is treated as expired,
+     * so it is returned immediately but reloaded in the background on first
+     * access. Already present values are not replaced.
+     */
+    void putStale(K key, V value) {
+        entries.putIfAbsent(key == null ? NULL_KEY : key,
+                new Entry<>(completed(value), 0));
+    }
+
+    /**
+     * @return the value, if it was loaded successfully, else null - never
+     * triggers a load
+     */
+    V getIfLoaded(K key) {
+        Entry<V> entry = entries.get(key == null ? NULL_KEY : key);
+        return entry == null ? null : getIfDone(entry.value);
+    }
+
+    /**
+     * @return the successfully loaded values of the keyed entries
+     */
+    @SuppressWarnings("unchecked")
+    Map<K, V> getAllLoaded() {
+        Map<K, V> result = new HashMap<>();
+        for (Map.Entry<Object, Entry<V>> entry : entries.entrySet()) {
+            V value = getIfDone(entry.getValue().value);
+            if (entry.getKey() != NULL_KEY && value != null) {
+                result.put((K) entry.getKey(), value);
+            }
+        }
+        return result;
+    }
+
+    private static <V> V getIfDone(Future<V> value) {
+        if (!value.isDone()) {
+            return null;
+        }
+        try {
+            return value.get();
+        } catch (ExecutionException | InterruptedException | CancellationException ex) {
+            return null;
+        }
+    }
+
+    void invalidate() {
+        invalidate(null);
+    }
+
+    void invalidate(K key) {
+        entries.remove(key == null ? NULL_KEY : key);
+    }
+
+    void invalidateAll() {
+        entries.clear();
+    }
+}
@@ -0,0 +1,349 @@
+/*
+ * Copyright 2015 Matthias Bläsing.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kenai.redminenb.repository;
+
+import static com.kenai.redminenb.util.StreamUtil.*;
+import com.kenai.redminenb.user.RedmineUser;
+import com.taskadapter.redmineapi.bean.IssueCategory;
+import com.taskadapter.redmineapi.bean.IssueCategoryFactory;
+import com.taskadapter.redmineapi.bean.IssuePriority;
+import com.taskadapter.redmineapi.bean.IssueStatus;
+import com.taskadapter.redmineapi.bean.IssueStatusFactory;
+import com.taskadapter.redmineapi.bean.Project;
+import com.taskadapter.redmineapi.bean.ProjectFactory;
+import com.taskadapter.redmineapi.bean.Tracker;
+import com.taskadapter.redmineapi.bean.TrackerFactory;
+import com.taskadapter.redmineapi.bean.User;
+import com.taskadapter.redmineapi.bean.UserFactory;
+import com.taskadapter.redmineapi.bean.Version;
+import com.taskadapter.redmineapi.bean.VersionFactory;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Snapshot of the server metadata of a repository (trackers, statuses,
+ * priorities, projects and the users, versions and categories of the
+ * projects) and the recently used users.
+ *
+ * The snapshot is written when the IDE is shut down and used to prefill the
+ * metadata caches on the next start, so that the UI can be populated before
+ * the server is contacted. Missing parts are null.
+ *
+ * @author matthias
+ */
+class MetadataSnapshot {
+    private static final Logger LOG = Logger.getLogger(MetadataSnapshot.class.getName());
+    private static final int MAGIC = 0x524E424D; // RNBM
+    private static final int VERSION = 2;
+
+    List<Tracker> trackers;
+    List<IssueStatus> statuses;
+    List<IssuePriority> priorities;
+    List<Project> projects;
+    Map<Integer, List<RedmineUser>> users = new HashMap<>();
+    Map<Integer, List<Version>> versions = new HashMap<>();
+    Map<Integer, List<IssueCategory>> categories = new HashMap<>();
+    List<RedmineUser> recentUsers;
+
+    /**
+     * @return the snapshot stored in file or null if no (readable) snapshot
+     * exists
+     */
+    static MetadataSnapshot read(File file) {
+        if (!file.canRead()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                LOG.log(Level.FINE, "Ignoring metadata snapshot with unknown format: {0}", file); // NOI18N
+                return null;
+            }
+            MetadataSnapshot snapshot = new MetadataSnapshot();
+            snapshot.trackers = readTrackers(in);
+            snapshot.statuses = readStatuses(in);
+            snapshot.priorities = readPriorities(in);
+            snapshot.projects = readProjects(in);
+            int projectCount = in.readInt();
+            for (int i = 0; i < projectCount; i++) {
+                int projectId = in.readInt();
+                List<RedmineUser> projectUsers = readUsers(in);
+                if (projectUsers != null) {
+                    snapshot.users.put(projectId, projectUsers);
+                }
+                List<Version> projectVersions = readVersions(in);
+                if (projectVersions != null) {
+                    snapshot.versions.put(projectId, projectVersions);
+                }
+                List<IssueCategory> projectCategories = readCategories(in);
+                if (projectCategories != null) {
+                    snapshot.categories.put(projectId, projectCategories);
+                }
+            }
+            snapshot.recentUsers = readUsers(in);
+            return snapshot;
+        } catch (IOException | RuntimeException ex) {
+            // Corrupt data can also surface as RuntimeException - the
+            // metadata is then loaded from the server
+            LOG.log(Level.INFO, "Failed to read metadata snapshot " + file, ex);
+            return null;
+        }
+    }
+
+    void write(File file) {
+        file.getParentFile().mkdirs();
+        File tempFile = new File(file.getParentFile(), file.getName() + ".tmp"); // NOI18N
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                writeTrackers(out, trackers);
+                writeStatuses(out, statuses);
+                writePriorities(out, priorities);
+                writeProjects(out, projects);
+                List<Integer> projectIds = new ArrayList<>(users.keySet());
+                for (Integer projectId : versions.keySet()) {
+                    if (!projectIds.contains(projectId)) {
+                        projectIds.add(projectId);
+                    }
+                }
+                for (Integer projectId : categories.keySet()) {
+                    if (!projectIds.contains(projectId)) {
+                        projectIds.add(projectId);
+                    }
+                }
+                out.writeInt(projectIds.size());
+                for (Integer projectId : projectIds) {
+                    out.writeInt(projectId);
+                    writeUsers(out, users.get(projectId));
+                    writeVersions(out, versions.get(projectId));
+                    writeCategories(out, categories.get(projectId));
+                }
+                writeUsers(out, recentUsers);
+            }
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException ex) {
+            LOG.log(Level.INFO, "Failed to write metadata snapshot " + file, ex);
+            if (!tempFile.delete()) {
+                tempFile.deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * Lists are written with their size, -1 denotes a missing list.
+     */
+    private static int writeSize(DataOutputStream out, List<?> list) throws IOException {
+        int size = list == null ? -1 : list.size();
+        out.writeInt(size);
+        return size;
+    }
+
+    /**
+     * @return the size of the list, -1 for null - checked against the bytes
+     * remaining in the stream (each element starts with an int)
+     */
+    private static int readSize(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        if (size < -1 || (long) size * 4 > in.available()) {
+            throw new IOException("Invalid list size: " + size); // NOI18N
+        }
+        return size;
+    }
+
+    private static void writeTrackers(DataOutputStream out, List<Tracker> trackers) throws IOException {
+        if (writeSize(out, trackers) > 0) {
+            for (Tracker tracker : trackers) {
+                out.writeInt(tracker.getId());
+                writeString(out, tracker.getName());
+            }
+        }
+    }
+
+    private static List<Tracker> readTrackers(DataInputStream in) throws IOException {
+        int size = readSize(in);
+        if (size < 0) {
+            return null;
+        }
+        List<Tracker> trackers = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            trackers.add(TrackerFactory.create(in.readInt(), readString(in)));
+        }
+        return trackers;
+    }
+
+    private static void writeStatuses(DataOutputStream out, List<IssueStatus> statuses) throws IOException {
+        if (writeSize(out, statuses) > 0) {
+            for (IssueStatus status : statuses) {
+                out.writeInt(status.getId());
+                writeString(out, status.getName());
+                out.writeBoolean(status.isDefaultStatus());
+                out.writeBoolean(status.isClosed());
+            }
+        }
+    }
+
+    private static List<IssueStatus> readStatuses(DataInputStream in) throws IOException {
+        int size = readSize(in);
+        if (size < 0) {
+            return null;
+        }
+        List<IssueStatus> statuses = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            IssueStatus status = IssueStatusFactory.create(in.readInt(), readString(in));
+            status.setDefaultStatus(in.readBoolean());
+            status.setClosed(in.readBoolean());
+            statuses.add(status);
+        }
+        return statuses;
+    }
+
+    private static void writePriorities(DataOutputStream out, List<IssuePriority> priorities) throws IOException {
+        if (writeSize(out, priorities) > 0) {
+            for (IssuePriority priority : priorities) {
+                out.writeInt(priority.getId());
+                writeString(out, priority.getName());
+                out.writeBoolean(priority.isDefault());
+            }
+        }
+    }
+
+    private static List<IssuePriority> readPriorities(DataInputStream in) throws IOException {
+        int size = readSize(in);
+        if (size < 0) {
+            return null;
+        }
+        List<IssuePriority> priorities = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            priorities.add(RedmineRepository.createIssuePriority(
+                    in.readInt(), readString(in), in.readBoolean()));
+        }
+        return priorities;
+    }
+
+    private static void writeProjects(DataOutputStream out, List<Project> projects) throws IOException {
+        if (writeSize(out, projects) > 0) {
+            for (Project project : projects) {
+                out.writeInt(project.getId());
+                writeString(out, project.getIdentifier());
+                writeString(out, project.getName());
+                writeInteger(out, project.getParentId());
+            }
+        }
+    }
+
+    private static List<Project> readProjects(DataInputStream in) throws IOException {
+        int size = readSize(in);
+        if (size < 0) {
+            return null;
+        }
+        List<Project> projects = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Project project = ProjectFactory.create(in.readInt());
+            project.setIdentifier(readString(in));
+            project.setName(readString(in));
+            project.setParentId(readInteger(in));
+            projects.add(project);
+        }
+        return projects;
+    }
+
+    private static void writeUsers(DataOutputStream out, List<RedmineUser> users) throws IOException {
+        if (writeSize(out, users) > 0) {
+            for (RedmineUser user : users) {
+                writeInteger(out, user.getUser().getId());
+                writeString(out, user.getUser().getFullName());
+                out.writeBoolean(user.isIsCurrentUser());
+            }
+        }
+    }
+
+    private static List<RedmineUser> readUsers(DataInputStream in) throws IOException {
+        int size = readSize(in);
+        if (size < 0) {
+            return null;
+        }
+        List<RedmineUser> users = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            User user = UserFactory.create(readInteger(in));
+            user.setFullName(readString(in));
+            users.add(new RedmineUser(user, in.readBoolean()));
+        }
+        return users;
+    }
+
+    private static void writeVersions(DataOutputStream out, List<Version> versions) throws IOException {
+        if (writeSize(out, versions) > 0) {
+            for (Version version : versions) {
+                writeInteger(out, version.getId());
+                writeString(out, version.getName());
+                writeString(out, version.getStatus());
+            }
+        }
+    }
+
+    private static List<Version> readVersions(DataInputStream in) throws IOException {
+        int size = readSize(in);
+        if (size < 0) {
+            return null;
+        }
+        List<Version> versions = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Version version = VersionFactory.create(readInteger(in));
+            version.setName(readString(in));
+            version.setStatus(readString(in));
+            versions.add(version);
+        }
+        return versions;
+    }
+
+    private static void writeCategories(DataOutputStream out, List<IssueCategory> categories) throws IOException {
+        if (writeSize(out, categories) > 0) {
+            for (IssueCategory category : categories) {
+                writeInteger(out, category.getId());
+                writeString(out, category.getName());
+            }
+        }
+    }
+
+    private static List<IssueCategory> readCategories(DataInputStream in) throws IOException {
+        int size = readSize(in);
+        if (size < 0) {
+            return null;
+        }
+        List<IssueCategory> categories = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            IssueCategory category = IssueCategoryFactory.create(readInteger(in));
+            category.setName(readString(in));
+            categories.add(category);
+        }
+        return categories;
+    }
+}
@@ -23,6 +23,9 @@ import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLException;
 import javax.net.ssl.SSLSession;
 import javax.net.ssl.SSLSocket;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
 import org.apache.http.conn.ssl.SSLInitializationException;
 import org.apache.http.conn.ssl.SSLSocketFactory;
 import org.apache.http.conn.ssl.X509HostnameVerifier;
@@ -58,9 +61,14 @@ class RedmineManagerFactoryHelper {
                 return HttpsURLConnection.getDefaultHostnameVerifier().verify(string, ssls);
             }
         });
-        PoolingClientConnectionManager connectionManager = 
-                com.taskadapter.redmineapi.RedmineManagerFactory
-                        .createConnectionManager(Integer.MAX_VALUE, socketFactory);
+        // Same setup as RedmineManagerFactory#createConnectionManager, but
+        // the requests can be aborted
+        SchemeRegistry registry = new SchemeRegistry();
+        registry.register(new Scheme("http", 80, PlainSocketFactory.getSocketFactory())); // NOI18N
+        registry.register(new Scheme("https", 443, socketFactory)); // NOI18N
+        PoolingClientConnectionManager connectionManager = new AbortableConnectionManager(registry);
+        connectionManager.setMaxTotal(Integer.MAX_VALUE);
+        connectionManager.setDefaultMaxPerRoute(Integer.MAX_VALUE);
         return connectionManager;
     }
     
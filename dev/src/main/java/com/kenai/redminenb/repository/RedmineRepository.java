@@ -23,10 +23,12 @@ import com.kenai.redminenb.issue.RedmineIssue;
 import com.kenai.redminenb.query.RedmineQuery;
 import com.kenai.redminenb.query.RedmineQueryController;
 import com.kenai.redminenb.user.RedmineUser;
+import com.kenai.redminenb.user.UserIndex;
 
 import com.kenai.redminenb.api.AuthMode;
 import com.kenai.redminenb.util.ExceptionHandler;
 import com.kenai.redminenb.util.NestedProject;
+import com.kenai.redminenb.util.RedmineUtil;
 import com.taskadapter.redmineapi.AttachmentManager;
 import com.taskadapter.redmineapi.IssueManager;
 import com.taskadapter.redmineapi.MembershipManager;
@@ -49,22 +51,35 @@ import com.taskadapter.redmineapi.bean.Tracker;
 import com.taskadapter.redmineapi.bean.Version;
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
+import java.io.File;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Date;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.SwingUtilities;
+import org.apache.commons.lang.StringUtils;
 import org.netbeans.api.annotations.common.NonNull;
 import org.netbeans.modules.bugtracking.spi.RepositoryController;
 import org.netbeans.modules.bugtracking.spi.RepositoryInfo;
@@ -97,6 +112,13 @@ public class RedmineRepository {
     static final String PROPERTY_PROJECT_ID = "projectId";              // NOI18N
     static final String PROPERTY_FEATURE_WATCHERS = "featureWatchers";  // NOI18N
     
+    private static final int PAGE_SIZE = 100;
+    // Keeps the URL of issue list requests filtered by id below 1kB
+    private static final int MAX_IDS_PER_REQUEST = 100;
+    // Time to live of cached server metadata (minutes)
+    private static final int DEFAULT_METADATA_TTL = 24 * 60;
+    private static final int DEFAULT_PROJECT_METADATA_TTL = 60;
+    
     private static final List<TimeEntryActivity> fallbackTimeActivityEntries;
     
     static {
@@ -133,19 +155,169 @@ public class RedmineRepository {
     private final Set<RedmineQuery> queriesToRefresh = new HashSet<>(3);
     private RequestProcessor.Task refreshIssuesTask;
     private RequestProcessor.Task refreshQueryTask;
-    private RequestProcessor requestProcessor;
+    private final Map<RequestLane, RequestProcessor> requestProcessors = new EnumMap<>(RequestLane.class);
+    private IssueRangeFetcher issueRangeFetcher;
 
     private final IssueCache issueCache = new IssueCache(this);
+    private IssueStore issueStore;
+    private IssueTextIndex textIndex;
+    private RenderedHtmlCache journalHtmlCache;
 
     private final Set<RedmineIssue> newIssues = Collections.synchronizedSet(new HashSet<RedmineIssue>());
-    private Map<Integer, NestedProject> projects;
-    private final Map<Integer, List<RedmineUser>> userCache = Collections.synchronizedMap(new HashMap<Integer,List<RedmineUser>>());
-    private final Map<Integer, List<IssueCategory>> categoryCache = Collections.synchronizedMap(new HashMap<Integer, List<IssueCategory>>());
-    private final Map<Integer, List<Version>> versionCache = Collections.synchronizedMap(new HashMap<Integer, List<Version>>());
-    private List<IssueStatus> statusCache = null;
-    private List<TimeEntryActivity> timeEntryActivityCache = null;
-    private List<Tracker> trackerCache = null;
-    private List<CustomFieldDefinition> customFieldsCache = null;
+    private final UserIndex userIndex = new UserIndex();
+    // Server metadata - concurrent requests for the same data share one load,
+    // expired data is served while it is reloaded in the background
+    private static final List<WeakReference<RedmineRepository>> snapshotRepositories = new LinkedList<>();
+    private final AtomicBoolean snapshotRestored = new AtomicBoolean();
+    private final Executor backgroundExecutor = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            getRequestProcessor(RequestLane.BACKGROUND).post(command, 0, Thread.MIN_PRIORITY);
+        }
+    };
+    private final LoadingCache<Void, Map<Integer, NestedProject>> projectCache = new LoadingCache<>(
+            new LoadingCache.Loader<Void, Map<Integer, NestedProject>>() {
+                @Override
+                public Map<Integer, NestedProject> load(Void key) throws RedmineException {
+                    return Collections.unmodifiableMap(
+                            convertProjectList(getProjectManager().getProjects()));
+                }
+            },
+            metadataTtl("projects", DEFAULT_PROJECT_METADATA_TTL), backgroundExecutor);
+    private final LoadingCache<Integer, List<RedmineUser>> userCache = new LoadingCache<>(
+            new LoadingCache.Loader<Integer, List<RedmineUser>>() {
+                @Override
+                public List<RedmineUser> load(Integer projectId) throws RedmineException {
+                    return loadUsers(projectId);
+                }
+            },
+            metadataTtl("users", DEFAULT_PROJECT_METADATA_TTL), backgroundExecutor);
+    private final LoadingCache<Integer, List<IssueCategory>> categoryCache = new LoadingCache<>(
+            new LoadingCache.Loader<Integer, List<IssueCategory>>() {
+                @Override
+                public List<IssueCategory> load(Integer projectId) throws RedmineException {
+                    List<IssueCategory> cats = getIssueManager().getCategories(projectId);
+                    for (IssueCategory ic : cats) {
+                        ic.setProject(null);
+                        ic.setAssignee(null);
+                    }
+                    return Collections.unmodifiableList(cats);
+                }
+            },
+            metadataTtl("categories", DEFAULT_PROJECT_METADATA_TTL), backgroundExecutor);
+    private final LoadingCache<Integer, List<Version>> versionCache = new LoadingCache<>(
+            new LoadingCache.Loader<Integer, List<Version>>() {
+                @Override
+                public List<Version> load(Integer projectId) throws RedmineException {
+                    return getProjectManager().getVersions(projectId);
+                }
+            },
+            metadataTtl("versions", DEFAULT_PROJECT_METADATA_TTL), backgroundExecutor);
+    private final LoadingCache<Void, List<IssueStatus>> statusCache = new LoadingCache<>(
+            new LoadingCache.Loader<Void, List<IssueStatus>>() {
+                @Override
+                public List<IssueStatus> load(Void key) throws RedmineException {
+                    return getIssueManager().getStatuses();
+                }
+            },
+            metadataTtl("statuses", DEFAULT_METADATA_TTL), backgroundExecutor);
+    private final LoadingCache<Void, List<TimeEntryActivity>> timeEntryActivityCache = new LoadingCache<>(
+            new LoadingCache.Loader<Void, List<TimeEntryActivity>>() {
+                @Override
+                public List<TimeEntryActivity> load(Void key) {
+                    try {
+                        return getIssueManager().getTimeEntryActivities();
+                    } catch (RedmineException | RuntimeException ex) {
+                        LOG.log(Level.INFO
+                                , "Failed to Redmine Time Entry Activities (either API is missing or no permission)"
+                                , ex);
+                        return fallbackTimeActivityEntries;
+                    }
+                }
+            },
+            metadataTtl("timeEntryActivities", DEFAULT_METADATA_TTL), backgroundExecutor);
+    private final LoadingCache<Void, List<Tracker>> trackerCache = new LoadingCache<>(
+            new LoadingCache.Loader<Void, List<Tracker>>() {
+                @Override
+                public List<Tracker> load(Void key) throws RedmineException {
+                    return getIssueManager().getTrackers();
+                }
+            },
+            metadataTtl("trackers", DEFAULT_METADATA_TTL), backgroundExecutor);
+    private final LoadingCache<Void, List<CustomFieldDefinition>> customFieldsCache = new LoadingCache<>(
+            new LoadingCache.Loader<Void, List<CustomFieldDefinition>>() {
+                @Override
+                public List<CustomFieldDefinition> load(Void key) {
+                    try {
+                        // since Redmine V2.4.0
+                        return getManager().getCustomFieldManager().getCustomFieldDefinitions();
+                    } catch (RedmineException | RuntimeException ex) {
+                        LOG.info("Custom Fields are not available - query failed");
+                        return Collections.EMPTY_LIST;
+                    }
+                }
+            },
+            metadataTtl("customFields", DEFAULT_METADATA_TTL), backgroundExecutor);
+    private final LoadingCache<Void, List<IssuePriority>> issuePriorityCache = new LoadingCache<>(
+            new LoadingCache.Loader<Void, List<IssuePriority>>() {
+                @Override
+                public List<IssuePriority> load(Void key) {
+                    try {
+                        // since Redmine V2.2.0
+                        List<IssuePriority> issuePriorities = getIssueManager().getIssuePriorities();
+                        Collections.reverse(issuePriorities);
+                        return issuePriorities;
+                    } catch (RedmineException | RuntimeException ex) {
+                        // LOG on info level, as SEVERE causes 
+                        Redmine.LOG.log(Level.INFO, "Can't get issue priorities, using defaults", ex);
+                        return fallbackIssuePriorities;
+                    }
+                }
+            },
+            metadataTtl("priorities", DEFAULT_METADATA_TTL), backgroundExecutor);
+    // Lookup of metadata by id
+    private final IdIndex<IssueStatus> statusIndex = new IdIndex<IssueStatus>() {
+        @Override
+        protected Integer getId(IssueStatus entry) {
+            return entry.getId();
+        }
+    };
+    private final IdIndex<IssuePriority> issuePriorityIndex = new IdIndex<IssuePriority>() {
+        @Override
+        protected Integer getId(IssuePriority entry) {
+            return entry.getId();
+        }
+    };
+    private final IdIndex<Tracker> trackerIndex = new IdIndex<Tracker>() {
+        @Override
+        protected Integer getId(Tracker entry) {
+            return entry.getId();
+        }
+    };
+    private final IdIndex<CustomFieldDefinition> customFieldIndex = new IdIndex<CustomFieldDefinition>() {
+        @Override
+        protected Integer getId(CustomFieldDefinition entry) {
+            return entry.getId();
+        }
+    };
+    private final IdIndex<Version> versionIndex = new IdIndex<Version>() {
+        @Override
+        protected Integer getId(Version entry) {
+            return entry.getId();
+        }
+    };
+    private final IdIndex<IssueCategory> categoryIndex = new IdIndex<IssueCategory>() {
+        @Override
+        protected Integer getId(IssueCategory entry) {
+            return entry.getId();
+        }
+    };
+    private final IdIndex<RedmineUser> userIdIndex = new IdIndex<RedmineUser>() {
+        @Override
+        protected Integer getId(RedmineUser entry) {
+            return entry.getId();
+        }
+    };
     
     // Make sure we know all instances we created - a crude hack, but API does
     // not allow ourselfes ....
@@ -190,10 +362,220 @@ public class RedmineRepository {
         this.info = info;
     }
 
+    private File getMetadataSnapshotFile() {
+        return new File(RedmineConfig.getInstance().getRepositoryDataDir(getID()),
+                "metadata.data"); // NOI18N
+    }
+
+    /**
+     * Prefill the metadata caches with the snapshot written at the end of
+     * the last session. The snapshot data is reloaded in the background on
+     * first access.
+     */
+    private void restoreMetadataSnapshot() {
+        if (info == null || !snapshotRestored.compareAndSet(false, true)) {
+            return;
+        }
+        synchronized (snapshotRepositories) {
+            snapshotRepositories.add(new WeakReference<>(this));
+        }
+        MetadataSnapshot snapshot = MetadataSnapshot.read(getMetadataSnapshotFile());
+        if (snapshot == null) {
+            return;
+        }
+        if (snapshot.trackers != null) {
+            trackerCache.putStale(null, snapshot.trackers);
+        }
+        if (snapshot.statuses != null) {
+            statusCache.putStale(null, snapshot.statuses);
+        }
+        if (snapshot.priorities != null) {
+            issuePriorityCache.putStale(null, snapshot.priorities);
+        }
+        if (snapshot.projects != null) {
+            projectCache.putStale(null, Collections.unmodifiableMap(
+                    convertProjectList(snapshot.projects)));
+        }
+        for (Map.Entry<Integer, List<RedmineUser>> entry : snapshot.users.entrySet()) {
+            userCache.putStale(entry.getKey(), Collections.unmodifiableList(entry.getValue()));
+            userIndex.addAll(entry.getValue());
+        }
+        if (snapshot.recentUsers != null) {
+            userIndex.addAll(snapshot.recentUsers);
+            // Stored most recent first
+            for (int i = snapshot.recentUsers.size() - 1; i >= 0; i--) {
+                userIndex.markUsed(snapshot.recentUsers.get(i).getId());
+            }
+        }
+        for (Map.Entry<Integer, List<Version>> entry : snapshot.versions.entrySet()) {
+            versionCache.putStale(entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<Integer, List<IssueCategory>> entry : snapshot.categories.entrySet()) {
+            categoryCache.putStale(entry.getKey(), Collections.unmodifiableList(entry.getValue()));
+        }
+    }
+
+    private void storeMetadataSnapshot() {
+        MetadataSnapshot snapshot = new MetadataSnapshot();
+        snapshot.trackers = trackerCache.getIfLoaded(null);
+        snapshot.statuses = statusCache.getIfLoaded(null);
+        snapshot.priorities = issuePriorityCache.getIfLoaded(null);
+        Map<Integer, NestedProject> projectMap = projectCache.getIfLoaded(null);
+        if (projectMap != null) {
+            snapshot.projects = new ArrayList<>(projectMap.size());
+            for (NestedProject np : projectMap.values()) {
+                snapshot.projects.add(np.getProject());
+            }
+        }
+        snapshot.users = userCache.getAllLoaded();
+        snapshot.versions = versionCache.getAllLoaded();
+        snapshot.categories = categoryCache.getAllLoaded();
+        snapshot.recentUsers = userIndex.getRecent();
+        snapshot.write(getMetadataSnapshotFile());
+    }
+
+    /**
+     * Write the metadata snapshots of all repositories, that used metadata in
+     * this session.
+     */
+    public static void storeMetadataSnapshots() {
+        List<RedmineRepository> repositories = new ArrayList<>();
+        synchronized (snapshotRepositories) {
+            Iterator<WeakReference<RedmineRepository>> it = snapshotRepositories.iterator();
+            while (it.hasNext()) {
+                RedmineRepository repository = it.next().get();
+                if (repository == null) {
+                    it.remove();
+                } else {
+                    repositories.add(repository);
+                }
+            }
+        }
+        for (RedmineRepository repository : repositories) {
+            repository.storeMetadataSnapshot();
+        }
+    }
+
     public IssueCache getIssueCache() {
         return issueCache;
     }
 
+    /**
+     * @return the persistent issue store of this repository
+     */
+    public synchronized IssueStore getIssueStore() {
+        if (issueStore == null) {
+            issueStore = new IssueStore(new File(
+                    RedmineConfig.getInstance().getRepositoryDataDir(getID()),
+                    "issues.data")); // NOI18N
+        }
+        return issueStore;
+    }
+
+    /**
+     * @return the full text index over the issues of this repository
+     */
+    public synchronized IssueTextIndex getTextIndex() {
+        if (textIndex == null) {
+            textIndex = new IssueTextIndex(new File(
+                    RedmineConfig.getInstance().getRepositoryDataDir(getID()),
+                    "textindex.data")); // NOI18N
+            // The index follows the issues dropped from the store
+            final IssueTextIndex index = textIndex;
+            getIssueStore().addEvictionListener(new IssueStore.EvictionListener() {
+                @Override
+                public void evicted(Collection<Integer> ids) {
+                    for (Integer id : ids) {
+                        // Skip issues stored again since the eviction
+                        if (!getIssueStore().contains(id)) {
+                            index.remove(id);
+                        }
+                    }
+                }
+            });
+            // Issues stored before the index existed are indexed and issues
+            // dropped while the index was not loaded are removed in the
+            // background
+            getRequestProcessor(RequestLane.BACKGROUND).post(new Runnable() {
+                @Override
+                public void run() {
+                    List<Integer> storedIds = getIssueStore().getIds();
+                    index.retainAll(storedIds);
+                    index.addMissing(getIssueStore(), storedIds);
+                }
+            }, 0, Thread.MIN_PRIORITY);
+        }
+        return textIndex;
+    }
+
+    /**
+     * @return the cache for the rendered HTML of the journal entries of
+     * this repository
+     */
+    public synchronized RenderedHtmlCache getJournalHtmlCache() {
+        if (journalHtmlCache == null) {
+            File directory = null;
+            if (RedmineConfig.getInstance().getHtmlCacheSpill()) {
+                directory = new File(
+                        RedmineConfig.getInstance().getRepositoryDataDir(getID()),
+                        "journals"); // NOI18N
+            }
+            journalHtmlCache = new RenderedHtmlCache(directory);
+        }
+        return journalHtmlCache;
+    }
+
+    /**
+     * Check in the background whether the data of an issue restored from the
+     * issue store is still current and update it if not.
+     */
+    void scheduleRevalidation(final RedmineIssue redmineIssue) {
+        getRequestProcessor(RequestLane.BACKGROUND).post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Issue issue = getIssueManager().getIssueById(redmineIssue.getIssue().getId());
+                    issueCache.updatedRedmineIssue(issue);
+                } catch (NotFoundException ex) {
+                    getIssueStore().remove(redmineIssue.getIssue().getId());
+                    getTextIndex().remove(redmineIssue.getIssue().getId());
+                } catch (RedmineException | RuntimeException ex) {
+                    LOG.log(Level.FINE, "Failed to revalidate issue " + redmineIssue.getID(), ex);
+                }
+            }
+        }, 0, Thread.MIN_PRIORITY);
+    }
+
+    /**
+     * Bulk version of {@link #scheduleRevalidation(com.kenai.redminenb.issue.RedmineIssue)},
+     * the issues are checked with issue list requests. Issues missing from
+     * the result (deleted or inaccessible) are left untouched.
+     */
+    void scheduleRevalidation(final Collection<RedmineIssue> redmineIssues) {
+        if (redmineIssues.size() == 1) {
+            scheduleRevalidation(redmineIssues.iterator().next());
+            return;
+        } else if (redmineIssues.isEmpty()) {
+            return;
+        }
+        final Set<Integer> ids = new LinkedHashSet<>();
+        for (RedmineIssue redmineIssue : redmineIssues) {
+            ids.add(redmineIssue.getIssue().getId());
+        }
+        getRequestProcessor(RequestLane.BACKGROUND).post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (Issue issue : fetchIssues(ids)) {
+                        issueCache.updatedRedmineIssue(issue);
+                    }
+                } catch (RedmineException | RuntimeException ex) {
+                    LOG.log(Level.FINE, "Failed to revalidate issues " + ids, ex);
+                }
+            }
+        }, 0, Thread.MIN_PRIORITY);
+    }
+
     public RepositoryInfo getInfo() {
         return info;
     }
@@ -217,20 +599,17 @@ public class RedmineRepository {
         info = ri;
         setAccessKey(accessKey);
         setAuthMode(authMode);
-        this.projects = null;
+        projectCache.invalidate();
     }
 
     public Map<Integer, NestedProject> getProjects() {
+        restoreMetadataSnapshot();
         try {
-            if (projects == null) {
-                Map<Integer, NestedProject> projectMap = 
-                        convertProjectList(getProjectManager().getProjects());
-                projects = Collections.unmodifiableMap(projectMap);
-            }
+            return projectCache.get();
         } catch (Exception ex) {
             Redmine.LOG.log(Level.WARNING, "Failed to retrieve project list", ex);
         }
-        return projects;
+        return null;
     }
 
     public static Map<Integer, NestedProject> convertProjectList(List<Project> projects) {
@@ -354,10 +733,61 @@ public class RedmineRepository {
         return redmineIssue;
     }
 
+    /**
+     * Get the issues with the supplied ids. Issues not found in the issue
+     * cache are fetched with issue list requests filtered by issue id
+     * instead of one request per issue. Issues restored from the issue store
+     * are revalidated together in the background.
+     */
     public Collection<RedmineIssue> getIssues(final String... ids) {
-        final List<RedmineIssue> ret = new ArrayList<>(ids.length);
+        final Map<String, RedmineIssue> found = new HashMap<>();
+        final Set<Integer> missing = new LinkedHashSet<>();
+        final List<RedmineIssue> restored = new ArrayList<>();
         for (String id : ids) {
+            if (id == null || found.containsKey(id)) {
+                continue;
+            }
+            Integer intId;
+            try {
+                intId = Integer.valueOf(id);
+            } catch (NumberFormatException ex) {
+                // not a valid redmine issue id
+                continue;
+            }
+            RedmineIssue issue = issueCache.getLocal(intId, restored);
+            if (issue != null) {
+                found.put(id, issue);
+            } else {
+                missing.add(intId);
+            }
+        }
+        scheduleRevalidation(restored);
+
+        if (missing.size() == 1) {
+            String id = missing.iterator().next().toString();
             RedmineIssue issue = getIssue(id);
+            if (issue != null) {
+                found.put(id, issue);
+            }
+        } else if (!missing.isEmpty()) {
+            try {
+                for (RedmineIssue issue : issueCache.cachedRedmineIssues(fetchIssues(missing))) {
+                    found.put(issue.getID(), issue);
+                }
+            } catch (RedmineException | RuntimeException ex) {
+                Redmine.LOG.log(Level.INFO, "Failed to fetch issues in bulk, falling back to single requests", ex);
+                for (Integer id : missing) {
+                    RedmineIssue issue = getIssue(id.toString());
+                    if (issue != null) {
+                        found.put(id.toString(), issue);
+                    }
+                }
+            }
+        }
+
+        final List<RedmineIssue> ret = new ArrayList<>(found.size());
+        for (String id : ids) {
+            RedmineIssue issue = found.remove(id);
             if (issue != null) {
                 ret.add(issue);
             }
@@ -365,6 +795,42 @@ public class RedmineRepository {
         return ret;
     }
 
+    /**
+     * Fetch issues by id with issue list requests. The ids are split into
+     * chunks, so that the request URLs stay short.
+     *
+     * @return the fetched issues, unknown or inaccessible issues are missing
+     */
+    private List<Issue> fetchIssues(Collection<Integer> ids) throws RedmineException {
+        return fetchIssues(ids, null);
+    }
+
+    /**
+     * @param updatedSince if not null, only issues updated since that point
+     *                     in time are fetched
+     */
+    private List<Issue> fetchIssues(Collection<Integer> ids, Date updatedSince) throws RedmineException {
+        List<Issue> result = new ArrayList<>(ids.size());
+        List<Integer> idList = new ArrayList<>(ids);
+        for (int start = 0; start < idList.size(); start += MAX_IDS_PER_REQUEST) {
+            List<Integer> chunk = idList.subList(start,
+                    Math.min(idList.size(), start + MAX_IDS_PER_REQUEST));
+            Map<String, String> filter = new HashMap<>();
+            filter.put("issue_id", StringUtils.join(chunk, ","));
+            filter.put("status_id", "*");
+            if (updatedSince != null) {
+                filter.put("updated_on", ">=" + RedmineUtil.formatTimestamp(updatedSince));
+            }
+            for (Issue issue : getIssueManager().getIssues(filter)) {
+                // Guard against servers ignoring the issue_id filter
+                if (chunk.contains(issue.getId())) {
+                    result.add(issue);
+                }
+            }
+        }
+        return result;
+    }
+
     public void remove() {
     }
 
@@ -420,6 +886,7 @@ public class RedmineRepository {
     public void removeQuery(String displayName) {
         RedmineConfig.getInstance().removeQuery(this, displayName);
         getQueryMap().remove(displayName);
+        getIssueStore().removeQueryResult(displayName);
         fireQueryListChanged();
 
     }
@@ -441,92 +908,184 @@ public class RedmineRepository {
     }
 
     public Collection<RedmineUser> getUsers(Project p) {
-        if (p != null && (!userCache.containsKey(p.getId()))) {
-            ArrayList<RedmineUser> users = new ArrayList<>();
-            try {
-                users.add(currentUser);
-                for (Membership m : getMembershipManager().getMemberships(p.getId().toString())) {
-                    if (m.getUser() != null
-                            && !currentUser.getUser().getId().equals(m.getUser().getId())) {
-                        users.add(new RedmineUser(m.getUser()));
+        if (p == null) {
+            return Collections.EMPTY_LIST;
+        }
+        restoreMetadataSnapshot();
+        try {
+            return userCache.get(p.getId());
+        } catch (RedmineException | RuntimeException ex) {
+            // Not reached - loadUsers reports failures itself
+            ExceptionHandler.handleException(LOG, "Can't get Redmine Users", ex);
+            return Collections.EMPTY_LIST;
+        }
+    }
+
+    /**
+     * Get the merged users of the supplied projects. The memberships of the
+     * projects not yet cached are fetched concurrently on the bulk lane and
+     * merged in the order the requests finish.
+     */
+    public Set<RedmineUser> getUsers(Collection<Project> projects) {
+        return getUsers(projects, null);
+    }
+
+    /**
+     * Same as {@link #getUsers(java.util.Collection)}, the users are
+     * additionally passed to the listener as they arrive: first the users of
+     * the cached projects, then the users of each fetched project.
+     */
+    public Set<RedmineUser> getUsers(Collection<Project> projects, UserFetchListener listener) {
+        restoreMetadataSnapshot();
+        Set<RedmineUser> result = new LinkedHashSet<>();
+        CompletionService<Collection<RedmineUser>> completionService = new ExecutorCompletionService<>(
+                getRequestProcessor(RequestLane.BULK));
+        int pending = 0;
+        for (final Project p : projects) {
+            if (p == null) {
+                continue;
+            }
+            if (userCache.getIfLoaded(p.getId()) != null) {
+                result.addAll(getUsers(p));
+            } else {
+                completionService.submit(new Callable<Collection<RedmineUser>>() {
+                    @Override
+                    public Collection<RedmineUser> call() {
+                        return getUsers(p);
                     }
+                });
+                pending++;
+            }
+        }
+        if (listener != null && !result.isEmpty()) {
+            listener.usersFetched(Collections.unmodifiableSet(result));
+        }
+        try {
+            for (; pending > 0; pending--) {
+                Collection<RedmineUser> projectUsers = completionService.take().get();
+                result.addAll(projectUsers);
+                if (listener != null) {
+                    listener.usersFetched(projectUsers);
                 }
-            } catch (RedmineException | RuntimeException ex) {
-                ExceptionHandler.handleException(LOG, "Can't get Redmine Users", ex);
             }
-            userCache.put(p.getId(), Collections.unmodifiableList(users));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex) {
+            // Not reached - getUsers(Project) reports failures itself
+            LOG.log(Level.INFO, "Failed to fetch users", ex);
         }
-        if(p == null || (! userCache.containsKey(p.getId()))) {
-            return Collections.EMPTY_LIST;
+        return result;
+    }
+
+    private List<RedmineUser> loadUsers(Integer projectId) {
+        ArrayList<RedmineUser> users = new ArrayList<>();
+        try {
+            MembershipManager membershipManager = getMembershipManager();
+            users.add(currentUser);
+            for (Membership m : membershipManager.getMemberships(projectId.toString())) {
+                if (m.getUser() != null
+                        && !currentUser.getUser().getId().equals(m.getUser().getId())) {
+                    users.add(new RedmineUser(m.getUser()));
+                }
+            }
+        } catch (RedmineException | RuntimeException ex) {
+            ExceptionHandler.handleException(LOG, "Can't get Redmine Users", ex);
         }
-        return userCache.get(p.getId());
+        userIndex.addAll(users);
+        return Collections.unmodifiableList(users);
+    }
+
+    /**
+     * @return the member of the project with the supplied id, null if not
+     * found
+     */
+    public RedmineUser getUser(Project p, Integer id) {
+        if (p == null) {
+            return null;
+        }
+        return userIdIndex.get(p.getId(), getUsers(p), id);
+    }
+
+    /**
+     * @return the users of the project, if they are already cached, else null
+     * - never contacts the server
+     */
+    public Collection<RedmineUser> getCachedUsers(Project p) {
+        if (p == null) {
+            return null;
+        }
+        restoreMetadataSnapshot();
+        return userCache.getIfLoaded(p.getId());
+    }
+
+    /**
+     * @return the index of the users known locally, it is filled as project
+     * memberships are loaded
+     */
+    public UserIndex getUserIndex() {
+        restoreMetadataSnapshot();
+        return userIndex;
     }
 
     public List<Tracker> getTrackers() {
-        if(trackerCache == null) {
-            try {
-                trackerCache = getIssueManager().getTrackers();
-            } catch (RedmineException | RuntimeException ex) {
-                ExceptionHandler.handleException(LOG, "Can't get Redmine Issue Trackers", ex);
-            }
+        restoreMetadataSnapshot();
+        try {
+            return trackerCache.get();
+        } catch (RedmineException | RuntimeException ex) {
+            ExceptionHandler.handleException(LOG, "Can't get Redmine Issue Trackers", ex);
+            return null;
         }
-        return trackerCache;
     }
     
     public List<TimeEntryActivity> getTimeEntryActivities() {
-        if (timeEntryActivityCache == null) {
-            try {
-                timeEntryActivityCache = getIssueManager().getTimeEntryActivities();
-            } catch (RedmineException | RuntimeException ex) {
-                LOG.log(Level.INFO
-                        , "Failed to Redmine Time Entry Activities (either API is missing or no permission)"
-                        , ex);
-                timeEntryActivityCache = fallbackTimeActivityEntries;
-            }
+        try {
+            return timeEntryActivityCache.get();
+        } catch (RedmineException ex) {
+            // Not reached - the loader falls back to the default activities
+            return fallbackTimeActivityEntries;
         }
-        return timeEntryActivityCache;
     }
 
     public IssueStatus getStatus(int id) {
-        for (IssueStatus issueStatus : getStatuses()) {
-            if (id == issueStatus.getId()) {
-                return issueStatus;
-            }
-        }
-        return null;
+        return statusIndex.get(getStatuses(), id);
+    }
+
+    public Tracker getTracker(Integer id) {
+        return trackerIndex.get(getTrackers(), id);
     }
 
     public Collection<? extends IssueStatus> getStatuses() {
-        if (statusCache == null) {
-            try {
-                statusCache = getIssueManager().getStatuses();
-            } catch (NotFoundException ex) {
-                DialogDisplayer.getDefault().notify(new NotifyDescriptor.Message(
-                        "Can't get Issue Statuses from Redmine:\n"
-                        + ex.getMessage(), NotifyDescriptor.ERROR_MESSAGE));
-                Redmine.LOG.log(Level.SEVERE, "Can't get Issue Statuses from Redmine", ex);
-            } catch (Exception ex) {
-                Redmine.LOG.log(Level.SEVERE, "Can't get Issue Statuses from Redmine", ex);
-            }
+        restoreMetadataSnapshot();
+        try {
+            return statusCache.get();
+        } catch (NotFoundException ex) {
+            DialogDisplayer.getDefault().notify(new NotifyDescriptor.Message(
+                    "Can't get Issue Statuses from Redmine:\n"
+                    + ex.getMessage(), NotifyDescriptor.ERROR_MESSAGE));
+            Redmine.LOG.log(Level.SEVERE, "Can't get Issue Statuses from Redmine", ex);
+        } catch (Exception ex) {
+            Redmine.LOG.log(Level.SEVERE, "Can't get Issue Statuses from Redmine", ex);
         }
+        return null;
+    }
 
-        return statusCache;
+    public IssueCategory getIssueCategory(Project p, Integer id) {
+        if (p == null) {
+            return null;
+        }
+        return categoryIndex.get(p.getId(), getIssueCategories(p), id);
     }
 
     public Collection<? extends IssueCategory> reloadIssueCategories(Project p) {
-        categoryCache.remove(p.getId());
+        categoryCache.invalidate(p.getId());
         return getIssueCategories(p);
     }
 
     public Collection<? extends IssueCategory> getIssueCategories(Project p) {
-        if (p != null && (!categoryCache.containsKey(p.getId()))) {
+        restoreMetadataSnapshot();
+        if (p != null) {
             try {
-                List<IssueCategory> cats = getIssueManager().getCategories(p.getId());
-                for(IssueCategory ic: cats) {
-                    ic.setProject(null);
-                    ic.setAssignee(null);
-                }
-                categoryCache.put(p.getId(), Collections.unmodifiableList(cats));
+                return categoryCache.get(p.getId());
             } catch (NotFoundException ex) {
                 DialogDisplayer.getDefault().notify(new NotifyDescriptor.Message(
                         "Can't get Issue Categories for Redmine Project "
@@ -539,62 +1098,59 @@ public class RedmineRepository {
                         + p.getName(), ex);
             }
         }
-        if(p == null || (!categoryCache.containsKey(p.getId()))) {
-            return Collections.EMPTY_LIST;
-        }
-        return categoryCache.get(p.getId());
+        return Collections.EMPTY_LIST;
     }
     
+    public Version getVersion(Project p, Integer id) {
+        if (p == null) {
+            return null;
+        }
+        return versionIndex.get(p.getId(), getVersions(p), id);
+    }
+
     public Collection<? extends Version> reloadVersions(Project p) {
-        versionCache.remove(p.getId());
+        versionCache.invalidate(p.getId());
         return getVersions(p);
     }
 
     public List<Version> getVersions(Project p) {      
-        if (p != null && (!versionCache.containsKey(p.getId()))) {
+        restoreMetadataSnapshot();
+        if (p != null) {
             try {
-                versionCache.put(p.getId(), getProjectManager().getVersions(p.getId()));
+                return versionCache.get(p.getId());
             } catch (Exception ex) {
                 Redmine.LOG.log(Level.SEVERE, "Can't get versions for project " + p.getName(), ex);
             }
         }
-        if(p == null || (!versionCache.containsKey(p.getId()))) {
-            return Collections.EMPTY_LIST;
-        }
-        return versionCache.get(p.getId());
+        return Collections.EMPTY_LIST;
     }
 
     public List<IssuePriority> getIssuePriorities() {
-        if (issuePriorities == null) {
-            try {
-                // since Redmine V2.2.0
-                issuePriorities = getIssueManager().getIssuePriorities();
-                Collections.reverse(issuePriorities);
-            } catch (Exception ex) {
-                // LOG on info level, as SEVERE causes 
-                issuePriorities = fallbackIssuePriorities;
-                Redmine.LOG.log(Level.INFO, "Can't get issue priorities, using defaults", ex);
-            }
+        restoreMetadataSnapshot();
+        try {
+            return issuePriorityCache.get();
+        } catch (RedmineException ex) {
+            // Not reached - the loader falls back to the default priorities
+            return fallbackIssuePriorities;
         }
-        return issuePriorities;
     }
     
     public void initCustomFieldDefinitions() {
-        if (customFieldsCache == null) {
-            try {
-                // since Redmine V2.4.0
-                customFieldsCache = getManager().getCustomFieldManager().getCustomFieldDefinitions();
-            } catch (Exception ex) {
-                LOG.info("Custom Fields are not available - query failed");
-                customFieldsCache = Collections.EMPTY_LIST;
-            }
+        getCustomFieldDefinitions();
+    }
+
+    private List<CustomFieldDefinition> getCustomFieldDefinitions() {
+        try {
+            return customFieldsCache.get();
+        } catch (RedmineException ex) {
+            // Not reached - the loader falls back to an empty list
+            return Collections.EMPTY_LIST;
         }
     }
     
     public List<CustomFieldDefinition> getCustomFieldDefinitions(String type, Project proj, Tracker t) {
-        initCustomFieldDefinitions();
         List<CustomFieldDefinition> result = new ArrayList<>();
-        for(CustomFieldDefinition cfd: customFieldsCache) {
+        for(CustomFieldDefinition cfd: getCustomFieldDefinitions()) {
             if(type.equals(cfd.getCustomizedType())
                     && (cfd.getTrackers().contains(t)))
             {
@@ -619,16 +1175,17 @@ public class RedmineRepository {
     }
     
     public CustomFieldDefinition getCustomFieldDefinitionById(int id) {
-        initCustomFieldDefinitions();
-        for(CustomFieldDefinition cfd: customFieldsCache) {
-            if(cfd.getId().equals(id)) {
-                return cfd;
-            }
-        }
-        return null;  
+        return customFieldIndex.get(getCustomFieldDefinitions(), id);
     }
 
+    /**
+     * Search the issues by id and subject on the server, merged with the
+     * matches of the locally known issues (see {@link #localSearch(java.lang.String)}),
+     * which also cover descriptions and journal notes. If the server can't
+     * be reached, only the local matches are returned.
+     */
     public Collection<RedmineIssue> simpleSearch(String string) {
+        Map<String, RedmineIssue> result = new LinkedHashMap<>();
         try {
             IssueManager issueManager = getIssueManager();
             List<Issue> resultIssues = new LinkedList<>();
@@ -643,16 +1200,59 @@ public class RedmineRepository {
                     null,
                     "*" + string + "*"));
 
-            List<RedmineIssue> redmineIssues = new LinkedList<>();
             for (Issue issue : resultIssues) {
                 RedmineIssue redmineIssue = issueCache.cachedRedmineIssue(issue);
-                redmineIssues.add(redmineIssue);
+                result.put(redmineIssue.getID(), redmineIssue);
             }
-            return redmineIssues;
         } catch (RedmineException | RuntimeException ex) {
             ExceptionHandler.handleException(LOG, "Can't search for Redmine issues", ex);
         }
-        return Collections.<RedmineIssue>emptyList();
+        for (RedmineIssue redmineIssue : localSearch(string)) {
+            if (!result.containsKey(redmineIssue.getID())) {
+                result.put(redmineIssue.getID(), redmineIssue);
+            }
+        }
+        return new ArrayList<>(result.values());
+    }
+
+    /**
+     * Search the locally known issues by id, subject, description and
+     * journal notes.
+     */
+    private Collection<RedmineIssue> localSearch(String string) {
+        Set<RedmineIssue> result = new LinkedHashSet<>();
+        try {
+            RedmineIssue byId = issueCache.getLocal(Integer.parseInt(string.trim()));
+            if (byId != null) {
+                result.add(byId);
+            }
+        } catch (NumberFormatException ex) {
+        }
+        IssueTextIndex index = getTextIndex();
+        Set<Integer> subjectIds = index.search(string, IssueTextIndex.Field.SUBJECT);
+        if (subjectIds == null) {
+            return result;
+        }
+        Set<Integer> descriptionIds = index.search(string, IssueTextIndex.Field.DESCRIPTION);
+        Set<Integer> journalIds = index.search(string, IssueTextIndex.Field.JOURNALS);
+        Set<Integer> candidates = new HashSet<>(subjectIds);
+        candidates.addAll(descriptionIds);
+        candidates.addAll(journalIds);
+        for (Integer id : candidates) {
+            RedmineIssue redmineIssue = issueCache.getLocal(id);
+            if (redmineIssue == null || redmineIssue.getIssue() == null) {
+                continue;
+            }
+            // The journal notes are not stored, so only the subject and
+            // the description can be verified
+            Issue issue = redmineIssue.getIssue();
+            if (journalIds.contains(id)
+                    || StringUtils.containsIgnoreCase(issue.getSubject(), string)
+                    || StringUtils.containsIgnoreCase(issue.getDescription(), string)) {
+                result.add(redmineIssue);
+            }
+        }
+        return result;
     }
 
     public Lookup getLookup() {
@@ -684,7 +1284,8 @@ public class RedmineRepository {
                 );
             }
             currentUser = new RedmineUser(manager.getUserManager().getCurrentUser(), true);
-            manager.setObjectsPerPage(100);
+            userIndex.add(currentUser);
+            manager.setObjectsPerPage(PAGE_SIZE);
         }
         return manager;
     }
@@ -705,20 +1306,79 @@ public class RedmineRepository {
         return getManager().getMembershipManager();
     }
     
+    /**
+     * Fetch the issues matching filter. Big results are fetched with
+     * concurrent requests.
+     *
+     * @param filter parameters of the issue list request
+     * @param idHint ids of a previous result of the request (used to split
+     *               the request), may be null
+     * @param listener receives the parts of the result as soon as they are
+     *                 fetched, may be null
+     */
+    public List<Issue> getIssues(Map<String, String> filter, Collection<Integer> idHint,
+            IssueFetchListener listener) throws RedmineException {
+        return getIssues(Collections.singletonList(filter), idHint, listener);
+    }
+
+    /**
+     * Fetch the issues matching one of the filters. The requests are issued
+     * concurrently and the results are merged, each issue is only contained
+     * once.
+     *
+     * @param filters parameters of the issue list requests
+     * @param idHint ids of a previous result of the requests (used to split
+     *               the requests), may be null
+     * @param listener receives the parts of the result as soon as they are
+     *                 fetched, may be null
+     */
+    public List<Issue> getIssues(List<Map<String, String>> filters, Collection<Integer> idHint,
+            IssueFetchListener listener) throws RedmineException {
+        IssueRangeFetcher fetcher;
+        synchronized (this) {
+            if (issueRangeFetcher == null) {
+                issueRangeFetcher = new IssueRangeFetcher(this, PAGE_SIZE);
+            }
+            fetcher = issueRangeFetcher;
+        }
+        return fetcher.getIssues(filters, idHint, listener);
+    }
+
     public RedmineUser getCurrentUser() {
         return currentUser;
     }
 
+    private static long metadataTtl(String cacheName, int defaultTtl) {
+        return TimeUnit.MINUTES.toMillis(
+                RedmineConfig.getInstance().getMetadataTtl(cacheName, defaultTtl));
+    }
+
+    /**
+     * @return the RequestProcessor of the interactive lane
+     */
     public RequestProcessor getRequestProcessor() {
-        if (requestProcessor == null) {
-            requestProcessor = new RequestProcessor("Redmine repository processor - " + getDisplayName(), 1, true); // NOI18N
+        return getRequestProcessor(RequestLane.INTERACTIVE);
+    }
+
+    public RequestProcessor getRequestProcessor(RequestLane lane) {
+        synchronized (requestProcessors) {
+            RequestProcessor rp = requestProcessors.get(lane);
+            if (rp == null) {
+                String name = "Redmine repository processor - " + getDisplayName(); // NOI18N
+                if (lane != RequestLane.INTERACTIVE) {
+                    name += " (" + lane.name().toLowerCase() + ")"; // NOI18N
+                }
+                rp = new RequestProcessor(name,
+                        RedmineConfig.getInstance().getRequestLaneThroughput(lane), true);
+                requestProcessors.put(lane, rp);
+            }
+            return rp;
         }
-        return requestProcessor;
     }
 
     private void setupIssueRefreshTask() {
         if (refreshIssuesTask == null) {
-            refreshIssuesTask = getRequestProcessor().create(new Runnable() {
+            refreshIssuesTask = getRequestProcessor(RequestLane.BACKGROUND).create(new Runnable() {
                 @Override
                 public void run() {
                     Set<String> ids;
@@ -732,16 +1392,73 @@ public class RedmineRepository {
                     }
                     Redmine.LOG.log(Level.FINER, "preparing to refresh issue {0} - {1}",
                             new Object[]{getDisplayName(), ids}); // NOI18N
-                    scheduleIssueRefresh();
+                    try {
+                        refreshChangedIssues(ids);
+                    } catch (RedmineException | RuntimeException ex) {
+                        LOG.log(Level.INFO, "Failed to refresh issues", ex);
+                    } finally {
+                        scheduleIssueRefresh();
+                    }
                 }
             });
+            refreshIssuesTask.setPriority(Thread.MIN_PRIORITY);
             scheduleIssueRefresh();
         }
     }
 
+    /**
+     * Refresh the supplied issues, if they were changed on the server.
+     * 
+     * One light issue list request finds the issues changed since their
+     * journals were fetched the last time, only these are refreshed with
+     * their journals, attachments and watchers. Query refreshes update the
+     * issue data without the journals, so the modification date of the issue
+     * data can't be used for this.
+     */
+    private void refreshChangedIssues(Set<String> ids) throws RedmineException {
+        Map<Integer, RedmineIssue> openIssues = new HashMap<>();
+        Date updatedSince = null;
+        boolean unknownUpdate = false;
+        for (String id : ids) {
+            RedmineIssue redmineIssue;
+            try {
+                redmineIssue = issueCache.getLocal(Integer.valueOf(id));
+            } catch (NumberFormatException ex) {
+                continue;
+            }
+            if (redmineIssue == null || redmineIssue.isNew()) {
+                continue;
+            }
+            openIssues.put(redmineIssue.getIssue().getId(), redmineIssue);
+            Date updatedOn = redmineIssue.getJournalsUpdatedOn();
+            if (updatedOn == null) {
+                unknownUpdate = true;
+            } else if (updatedSince == null || updatedOn.before(updatedSince)) {
+                updatedSince = updatedOn;
+            }
+        }
+        if (openIssues.isEmpty()) {
+            return;
+        }
+
+        List<Issue> changed = fetchIssues(openIssues.keySet(), unknownUpdate ? null : updatedSince);
+        int refreshed = 0;
+        for (Issue issue : changed) {
+            RedmineIssue redmineIssue = openIssues.get(issue.getId());
+            Date knownUpdate = redmineIssue.getJournalsUpdatedOn();
+            if (knownUpdate == null || issue.getUpdatedOn() == null
+                    || issue.getUpdatedOn().after(knownUpdate)) {
+                redmineIssue.refresh();
+                refreshed++;
+            }
+        }
+        Redmine.LOG.log(Level.FINE, "refreshed {0} of {1} issues on repository {2}",
+                new Object[]{refreshed, openIssues.size(), getDisplayName()}); // NOI18N
+    }
+
     private void setupQueryRefreshTask() {
         if (refreshQueryTask == null) {
-            refreshQueryTask = getRequestProcessor().create(new Runnable() {
+            refreshQueryTask = getRequestProcessor(RequestLane.BACKGROUND).create(new Runnable() {
                 @Override
                 public void run() {
                     try {
@@ -765,6 +1482,7 @@ public class RedmineRepository {
                     }
                 }
             });
+            refreshQueryTask.setPriority(Thread.MIN_PRIORITY);
             scheduleQueryRefresh();
         }
     }
@@ -905,14 +1623,7 @@ public class RedmineRepository {
         return ip;
     }
 
-    private List<IssuePriority> issuePriorities;
-
     public IssuePriority getIssuePriority(Integer id) {
-        for(IssuePriority ip: getIssuePriorities()) {
-            if(ip.getId().equals(id)) {
-                return ip;
-            }
-        }
-        return null;
+        return issuePriorityIndex.get(getIssuePriorities(), id);
     }
 }
@@ -0,0 +1,250 @@
+/*
+ * Copyright 2015 Matthias Bläsing.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kenai.redminenb.repository;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.openide.util.RequestProcessor;
+
+/**
+ * Cache for HTML rendered from server data (journal entries).
+ *
+ * The entries are identified by the id of the rendered object, the version
+ * of the renderer and a hash of the rendered content, so that changed
+ * rendering or edited content invalidates the cache.
+ * The most recently used entries are held in memory, entries evicted from
+ * memory are spilled to disk (if a directory is supplied) and are read from
+ * there on the next access - also in later sessions.
+ *
+ * Spilled files are replaced: writing an entry deletes the files of the
+ * same object with other content hashes, and the first write of a session
+ * deletes the files of other renderer versions.
+ *
+ * @author matthias
+ */
+public class RenderedHtmlCache {
+    private static final Logger LOG = Logger.getLogger(RenderedHtmlCache.class.getName());
+    private static final int MAX_MEMORY_ENTRIES = 1000;
+    private static final RequestProcessor RP = new RequestProcessor("Redmine rendered HTML cache", 1); // NOI18N
+
+    private static final class Key {
+        private final int id;
+        private final int version;
+        private final int contentHash;
+
+        public Key(int id, int version, int contentHash) {
+            this.id = id;
+            this.version = version;
+            this.contentHash = contentHash;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * id + version) + contentHash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return id == other.id && version == other.version
+                    && contentHash == other.contentHash;
+        }
+    }
+
+    private final File directory;
+    private final Map<Key, String> memory = new LinkedHashMap<Key, String>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, String> eldest) {
+            if (size() > MAX_MEMORY_ENTRIES) {
+                spill(eldest.getKey(), eldest.getValue());
+                return true;
+            }
+            return false;
+        }
+    };
+    // Evicted entries, that are not yet written to disk
+    private final Map<Key, String> pendingSpill = new HashMap<>();
+    // Renderer version, whose directory was cleaned of other versions - only
+    // accessed by the spill task
+    private Integer cleanedVersion;
+    private final RequestProcessor.Task spillTask = RP.create(new Runnable() {
+        @Override
+        public void run() {
+            writePending();
+        }
+    });
+
+    /**
+     * @param directory directory evicted entries are written to, the cache
+     *                  is memory only if null
+     */
+    public RenderedHtmlCache(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @return the cached HTML or null if not cached
+     */
+    public String get(int id, int version, int contentHash) {
+        Key key = new Key(id, version, contentHash);
+        synchronized (this) {
+            String html = memory.get(key);
+            if (html == null) {
+                html = pendingSpill.get(key);
+            }
+            if (html != null) {
+                return html;
+            }
+        }
+        String html = readSpilled(key);
+        if (html != null) {
+            synchronized (this) {
+                memory.put(key, html);
+            }
+        }
+        return html;
+    }
+
+    public synchronized void put(int id, int version, int contentHash, String html) {
+        if (html != null) {
+            memory.put(new Key(id, version, contentHash), html);
+        }
+    }
+
+    private void spill(Key key, String html) {
+        assert Thread.holdsLock(this);
+        if (directory == null) {
+            return;
+        }
+        pendingSpill.put(key, html);
+        spillTask.schedule(0);
+    }
+
+    private File getVersionDirectory(int version) {
+        return new File(directory, "v" + version); // NOI18N
+    }
+
+    private File getFile(Key key) {
+        // Bucket the files, so that the directories don't grow too big
+        return new File(getVersionDirectory(key.version), (key.id / 1000) + File.separator + key.id
+                + "-" + Integer.toHexString(key.contentHash) + ".html"); // NOI18N
+    }
+
+    private String readSpilled(Key key) {
+        if (directory == null) {
+            return null;
+        }
+        File file = getFile(key);
+        if (!file.canRead()) {
+            return null;
+        }
+        try {
+            return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        } catch (IOException ex) {
+            LOG.log(Level.FINE, "Failed to read cached HTML " + file, ex);
+            return null;
+        }
+    }
+
+    /**
+     * Delete the files of the object rendered from other content.
+     */
+    private static void deleteOtherContent(File file, int id) {
+        File[] siblings = file.getParentFile().listFiles();
+        if (siblings == null) {
+            return;
+        }
+        String prefix = id + "-"; // NOI18N
+        // Files written before the content hash was part of the name
+        String unhashed = id + ".html"; // NOI18N
+        for (File sibling : siblings) {
+            if ((sibling.getName().startsWith(prefix) || sibling.getName().equals(unhashed))
+                    && !sibling.equals(file)) {
+                deleteFile(sibling);
+            }
+        }
+    }
+
+    /**
+     * Delete the files of other renderer versions.
+     */
+    private void deleteOtherVersions(int version) {
+        File[] versionDirectories = directory.listFiles();
+        if (versionDirectories == null) {
+            return;
+        }
+        File current = getVersionDirectory(version);
+        for (File versionDirectory : versionDirectories) {
+            if (versionDirectory.getName().startsWith("v") // NOI18N
+                    && !versionDirectory.equals(current)) {
+                deleteFile(versionDirectory);
+            }
+        }
+    }
+
+    private static void deleteFile(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteFile(child);
+            }
+        }
+        if (!file.delete()) {
+            LOG.log(Level.FINE, "Failed to delete cached HTML {0}", file); // NOI18N
+        }
+    }
+
+    private void writePending() {
+        Map<Key, String> toWrite;
+        synchronized (this) {
+            toWrite = new HashMap<>(pendingSpill);
+        }
+        for (Map.Entry<Key, String> entry : toWrite.entrySet()) {
+            if (cleanedVersion == null || cleanedVersion != entry.getKey().version) {
+                deleteOtherVersions(entry.getKey().version);
+                cleanedVersion = entry.getKey().version;
+            }
+            File file = getFile(entry.getKey());
+            deleteOtherContent(file, entry.getKey().id);
+            File tempFile = new File(file.getParentFile(), file.getName() + ".tmp"); // NOI18N
+            try {
+                file.getParentFile().mkdirs();
+                Files.write(tempFile.toPath(), entry.getValue().getBytes(StandardCharsets.UTF_8));
+                Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException ex) {
+                LOG.log(Level.INFO, "Failed to write cached HTML " + file, ex);
+                if (!tempFile.delete()) {
+                    tempFile.deleteOnExit();
+                }
+            }
+            synchronized (this) {
+                pendingSpill.remove(entry.getKey());
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2015 Matthias Bläsing.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kenai.redminenb.repository;
+
+import com.kenai.redminenb.util.SafeAutoCloseable;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Requests belonging to one unit of work (for example one execution of a
+ * query), that can be cancelled together.
+ *
+ * Threads working for the group enter it for the duration of the work.
+ * Cancelling the group interrupts these threads and aborts the HTTP
+ * requests they execute, requests issued later by threads of a cancelled
+ * group fail immediately.
+ *
+ * Work split into concurrent parts (see {@link IssueRangeFetcher}) runs
+ * the parts in the group of the issuing thread.
+ *
+ * @author matthias
+ */
+public final class RequestGroup {
+    private static final ThreadLocal<RequestGroup> CURRENT = new ThreadLocal<>();
+
+    private final Set<Thread> threads = new HashSet<>();
+    private boolean cancelled;
+
+    /**
+     * @return the group the current thread works for, null if none
+     */
+    public static RequestGroup current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Let the current thread work for this group until the returned
+     * closeable is closed.
+     */
+    public SafeAutoCloseable enter() {
+        final Thread thread = Thread.currentThread();
+        final RequestGroup previous = CURRENT.get();
+        CURRENT.set(this);
+        synchronized (this) {
+            threads.add(thread);
+        }
+        return new SafeAutoCloseable() {
+            @Override
+            public void close() {
+                boolean wasCancelled;
+                synchronized (RequestGroup.this) {
+                    threads.remove(thread);
+                    wasCancelled = cancelled;
+                }
+                if (previous == null) {
+                    CURRENT.remove();
+                } else {
+                    CURRENT.set(previous);
+                }
+                if (wasCancelled) {
+                    // Don't leak the interrupt of the cancellation to later
+                    // work of the thread
+                    Thread.interrupted();
+                }
+            }
+        };
+    }
+
+    public synchronized void cancel() {
+        if (cancelled) {
+            return;
+        }
+        cancelled = true;
+        // Threads only leave the group while holding the lock, so only
+        // threads still working for the group are interrupted
+        for (Thread thread : threads) {
+            thread.interrupt();
+            AbortableConnectionManager.abortRequest(thread);
+        }
+    }
+
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2015 Matthias Bläsing.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kenai.redminenb.repository;
+
+/**
+ * Lanes of the per-repository request execution.
+ *
+ * Each lane is backed by its own RequestProcessor, so work in one lane is
+ * never queued behind work of another lane.
+ *
+ * @see RedmineRepository#getRequestProcessor(RequestLane)
+ * @author matthias
+ */
+public enum RequestLane {
+    /**
+     * Work the user is waiting for (opening/saving issues, populating the
+     * query panel, running a query).
+     */
+    INTERACTIVE(1),
+    /**
+     * Periodic refreshes of issues and queries and revalidation of stored
+     * data - tasks run with low thread priority.
+     */
+    BACKGROUND(1),
+    /**
+     * Partial requests of big fetches, issued by tasks of the other lanes.
+     */
+    BULK(4);
+
+    private final int defaultThroughput;
+
+    private RequestLane(int defaultThroughput) {
+        this.defaultThroughput = defaultThroughput;
+    }
+
+    /**
+     * @return number of tasks of this lane executed in parallel, if not
+     * configured otherwise
+     */
+    public int getDefaultThroughput() {
+        return defaultThroughput;
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2015 Matthias Bläsing.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kenai.redminenb.repository;
+
+import com.kenai.redminenb.user.RedmineUser;
+import java.util.Collection;
+
+/**
+ * Receives the users of the projects of a membership request as soon as
+ * they are fetched.
+ *
+ * The listener is invoked from the thread, that issued the request.
+ *
+ * @author matthias
+ */
+public interface UserFetchListener {
+
+    /**
+     * @param users the users of the projects fetched since the last call
+     */
+    public void usersFetched(Collection<RedmineUser> users);
+}
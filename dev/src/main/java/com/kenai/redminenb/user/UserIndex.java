@@ -0,0 +1,96 @@
+/*
+ * Copyright 2015 Matthias Bläsing.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kenai.redminenb.user;
+
+import com.kenai.redminenb.util.RedmineUtil.RedmineUserComparator;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of the users of a repository, that are known locally.
+ *
+ * The index is filled from the project memberships as they are fetched and
+ * additionally remembers the recently used users, so user selections can
+ * be offered before all memberships are loaded.
+ *
+ * @author matthias
+ */
+public class UserIndex {
+    private static final int MAX_RECENT = 20;
+
+    private final Map<Integer, RedmineUser> users = new HashMap<>();
+    private final LinkedList<Integer> recent = new LinkedList<>();
+
+    public synchronized void add(RedmineUser user) {
+        if (user == null || user.getId() == null) {
+            return;
+        }
+        RedmineUser known = users.get(user.getId());
+        // Don't replace the current user instance by a plain membership entry
+        if (known == null || user.isIsCurrentUser() || !known.isIsCurrentUser()) {
+            users.put(user.getId(), user);
+        }
+    }
+
+    public synchronized void addAll(Collection<RedmineUser> newUsers) {
+        for (RedmineUser user : newUsers) {
+            add(user);
+        }
+    }
+
+    /**
+     * Record the use of a user (for example as watcher or filter value).
+     */
+    public synchronized void markUsed(Integer userId) {
+        if (userId == null) {
+            return;
+        }
+        recent.remove(userId);
+        recent.addFirst(userId);
+        while (recent.size() > MAX_RECENT) {
+            recent.removeLast();
+        }
+    }
+
+    /**
+     * @return the known recently used users, the most recent first
+     */
+    public synchronized List<RedmineUser> getRecent() {
+        List<RedmineUser> result = new ArrayList<>(recent.size());
+        for (Integer id : recent) {
+            RedmineUser user = users.get(id);
+            if (user != null) {
+                result.add(user);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return all known users sorted by name
+     */
+    public synchronized List<RedmineUser> getAll() {
+        List<RedmineUser> result = new ArrayList<>(users.values());
+        Collections.sort(result, RedmineUserComparator.SINGLETON);
+        return result;
+    }
+}
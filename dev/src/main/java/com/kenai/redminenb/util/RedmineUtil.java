@@ -25,9 +25,12 @@ import com.kenai.redminenb.user.RedmineUser;
 import com.taskadapter.redmineapi.bean.Identifiable;
 import com.taskadapter.redmineapi.bean.Journal;
 import com.taskadapter.redmineapi.bean.Project;
+import java.text.SimpleDateFormat;
 import java.util.Collection;
 import java.util.Comparator;
+import java.util.Date;
 import java.util.Objects;
+import java.util.TimeZone;
 import javax.swing.JButton;
 import org.apache.commons.lang.StringUtils;
 import org.openide.DialogDescriptor;
@@ -54,6 +57,16 @@ public final class RedmineUtil {
         return StringUtils.isBlank(s) ? s : Character.toUpperCase(s.charAt(0)) + s.substring(1);
     }
 
+    /**
+     * Format a point in time for use in redmine filters (for example
+     * updated_on).
+     */
+    public static String formatTimestamp(Date date) {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'"); // NOI18N
+        format.setTimeZone(TimeZone.getTimeZone("UTC")); // NOI18N
+        return format.format(date);
+    }
+
     public static int indexOfEqualId(Collection<? extends Identifiable> c, Identifiable idObject) {
         int i = 0;
         if (idObject == null) {
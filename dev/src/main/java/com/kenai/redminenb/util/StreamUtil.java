@@ -0,0 +1,141 @@
+/*
+ * Copyright 2015 Matthias Bläsing.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kenai.redminenb.util;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+/**
+ * Helpers to write/read nullable values to/from data streams.
+ *
+ * DataOutput#writeUTF is limited to 64kB, so strings are written as length
+ * prefixed UTF-8 byte sequences.
+ *
+ * The lengths read from the streams are checked, so that corrupt data fails
+ * with an IOException instead of huge allocations.
+ *
+ * @author matthias
+ */
+public final class StreamUtil {
+    private static final int MAX_STRING_LENGTH = 64 * 1024 * 1024;
+
+    private StreamUtil() {
+    }
+
+    public static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] data = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(data.length);
+            out.write(data);
+        }
+    }
+
+    public static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > MAX_STRING_LENGTH) {
+            throw new IOException("Invalid string length: " + length); // NOI18N
+        }
+        byte[] data = new byte[length];
+        in.readFully(data);
+        return new String(data, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Same as {@link #readString(java.io.DataInput)}, the length is checked
+     * against the bytes remaining in the stream.
+     */
+    public static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > in.available()) {
+            throw new IOException("Invalid string length: " + length); // NOI18N
+        }
+        byte[] data = new byte[length];
+        in.readFully(data);
+        return new String(data, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Read a length or element count and check it against the bytes
+     * remaining in the stream.
+     *
+     * @param minElementSize minimal number of bytes of each element
+     */
+    public static int readLength(DataInputStream in, int minElementSize) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || (long) length * minElementSize > in.available()) {
+            throw new IOException("Invalid length: " + length); // NOI18N
+        }
+        return length;
+    }
+
+    public static void writeInteger(DataOutput out, Integer value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeInt(value);
+        }
+    }
+
+    public static Integer readInteger(DataInput in) throws IOException {
+        if (in.readBoolean()) {
+            return in.readInt();
+        } else {
+            return null;
+        }
+    }
+
+    public static void writeFloat(DataOutput out, Float value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeFloat(value);
+        }
+    }
+
+    public static Float readFloat(DataInput in) throws IOException {
+        if (in.readBoolean()) {
+            return in.readFloat();
+        } else {
+            return null;
+        }
+    }
+
+    public static void writeDate(DataOutput out, Date value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeLong(value.getTime());
+        }
+    }
+
+    public static Date readDate(DataInput in) throws IOException {
+        if (in.readBoolean()) {
+            return new Date(in.readLong());
+        } else {
+            return null;
+        }
+    }
+}
@@ -26,6 +26,10 @@ import org.eclipse.mylyn.wikitext.textile.core.TextileLanguage;
 /**
  * Textile Wiki Markup utility.
  *
+ * The conversion methods are thread safe - neither the parser nor the
+ * markup language of mylyn can be shared between concurrent parses, so
+ * each thread uses its own instances.
+ *
  * @author Anchialas <anchialas@gmail.com>
  */
 public final class TextileUtil {
@@ -34,8 +38,21 @@ public final class TextileUtil {
         // omitted
     }
 
+    private static final ThreadLocal<MarkupParser> PARSER = new ThreadLocal<MarkupParser>() {
+        @Override
+        protected MarkupParser initialValue() {
+            MarkupParser markupParser = new MarkupParser();
+            markupParser.setMarkupLanguage(new TextileLanguage());
+            return markupParser;
+        }
+    };
+
+    /**
+     * @return the textile parser of the calling thread, it must not be
+     * passed to other threads
+     */
     public static MarkupParser getTextileMarkupParser() {
-        return LazyHolder.SINGLETON;
+        return PARSER.get();
     }
 
     public static String convertToHTML(String textile) {
@@ -64,18 +81,10 @@ public final class TextileUtil {
 
         MarkupParser parser = TextileUtil.getTextileMarkupParser();
         parser.setBuilder(builder);
-        parser.parse(textile);
-        parser.setBuilder(null);
-    }
-
-    private static class LazyHolder {
-
-        private static final MarkupParser SINGLETON = createMarkupParser();
-
-        private static MarkupParser createMarkupParser() {
-            MarkupParser markupParser = new MarkupParser();
-            markupParser.setMarkupLanguage(new TextileLanguage());
-            return markupParser;
+        try {
+            parser.parse(textile);
+        } finally {
+            parser.setBuilder(null);
         }
     }
 }